@@ -0,0 +1,164 @@
+package com.ivanov.providerdbcreator;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Class serves analytics view page. "load" action reads USERS and
+ * traffic tables once to {@link TrafficAnalytics} which is kept by
+ * servlet. Other actions answer capacity planning questions from
+ * loaded analytics without database queries.
+ *
+ * Like Servlet it handles all program exceptions and shows them to
+ * program user on view page. All received parameters are converted to
+ * attributes to be shown on view form as form autofill.
+ *
+ * @author Aleksandr Ivanov
+ */
+@WebServlet("/analytics")
+public class AnalyticsServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+    private static final String TOP_PARSE_ERROR =
+            ". Wrong top users quantity. It should be an integer and > 0.";
+    private static final double[] PERCENTS = {50, 95, 99};
+    private static final int DEFAULT_TOP_USERS = 10;
+
+    /**
+     * Analytics loaded by the last "load" action.
+     */
+    private volatile TrafficAnalytics analytics;
+
+    /**
+     * Executes requested action and forwards its results back to
+     * analytics view page.
+     */
+    @Override
+    protected void doPost(
+            HttpServletRequest request,
+            HttpServletResponse response)
+            throws ServletException, IOException {
+        String action = request.getParameter("action");
+        String error = "Error: ";
+        StringBuilder resultBuilder = new StringBuilder();
+
+        try {
+            if ("load".equals(action)) {
+                String validation =
+                        ServletParameters.checkConnectionParameters(request);
+
+                if (ServletParameters.SUCCESSFUL.equals(validation)) {
+                    resultBuilder.append(loadAnalytics(request));
+                } else {
+                    resultBuilder.append(error);
+                    resultBuilder.append(validation);
+                }
+            } else if (analytics == null) {
+                resultBuilder.append(error);
+                resultBuilder.append("traffic is not loaded yet.");
+            } else {
+                long startNanos = System.nanoTime();
+
+                runQuery(request, action);
+                resultBuilder.append("Answered in ");
+                resultBuilder.append((System.nanoTime() - startNanos)
+                        / 1_000_000);
+                resultBuilder.append(" ms.");
+            }
+        } catch (ClassNotFoundException | SQLException e) {
+            resultBuilder.append(error);
+            resultBuilder.append(e);
+        } catch (NumberFormatException e) {
+            resultBuilder.append(error);
+            resultBuilder.append(e);
+            resultBuilder.append(TOP_PARSE_ERROR);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            resultBuilder.append(error);
+            resultBuilder.append(e);
+        }
+
+        ServletParameters.setRequestAttributes(request,
+                resultBuilder.toString());
+        ServletParameters.forward(getServletContext(), "/analytics.jsp",
+                request, response);
+    }
+
+    /**
+     * Reads traffic from database defined by request parameters.
+     *
+     * @param request provides connection parameters and storage mode
+     * @return String with loading result
+     * @throws SQLException handling is implied to do in doPost
+     * @throws ClassNotFoundException handling is implied to do in doPost
+     */
+    private String loadAnalytics(HttpServletRequest request)
+            throws SQLException, ClassNotFoundException {
+        String storageModeString = request.getParameter("storageMode");
+        StorageMode storageMode =
+                (storageModeString == null || storageModeString.isEmpty())
+                ? StorageMode.PER_MINUTE
+                : StorageMode.valueOf(storageModeString);
+        UserDao userDao = new UserDao(
+                request.getParameter("hostName"),
+                request.getParameter("portName"),
+                request.getParameter("dbName"),
+                request.getParameter("dbUserName"),
+                request.getParameter("dbPassword"),
+                storageMode);
+        long startNanos = System.nanoTime();
+        TrafficAnalytics loadedAnalytics = userDao.loadTrafficAnalytics();
+
+        analytics = loadedAnalytics;
+
+        StringBuilder resultBuilder = new StringBuilder();
+
+        resultBuilder.append("Loaded ");
+        resultBuilder.append(loadedAnalytics.getRowsCount());
+        resultBuilder.append(" minutes of ");
+        resultBuilder.append(loadedAnalytics.getUsersCount());
+        resultBuilder.append(" users in ");
+        resultBuilder.append((System.nanoTime() - startNanos) / 1_000_000);
+        resultBuilder.append(" ms.");
+        return resultBuilder.toString();
+    }
+
+    /**
+     * Answers query by loaded analytics and sets its result as
+     * request attribute.
+     *
+     * @param request to set result attribute
+     * @param action query name
+     * @throws NumberFormatException for invalid top users quantity
+     * @throws IllegalArgumentException for unknown query
+     */
+    private void runQuery(HttpServletRequest request, String action) {
+        TrafficAnalytics currentAnalytics = analytics;
+
+        if ("topUsers".equals(action)) {
+            String topString = request.getParameter("topUsers");
+            int top = (topString == null || topString.isEmpty())
+                    ? DEFAULT_TOP_USERS
+                    : Integer.parseInt(topString);
+
+            if (top < 1) {
+                throw new NumberFormatException("top users quantity is "
+                        + "less than 1");
+            }
+            request.setAttribute("topUsersByCity",
+                    currentAnalytics.getTopUsersByCity(top));
+        } else if ("peakMinutes".equals(action)) {
+            request.setAttribute("peakMinutes",
+                    currentAnalytics.getPeakMinutesByDay());
+        } else if ("percentiles".equals(action)) {
+            request.setAttribute("percentiles",
+                    currentAnalytics.getLoadPercentiles(PERCENTS));
+        } else {
+            throw new IllegalArgumentException("unknown action " + action);
+        }
+    }
+}
@@ -1,15 +1,22 @@
 package com.ivanov.providerdbcreator;
 
+import java.io.IOException;
 import java.sql.SQLException;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
 
 /**
  * Class carries controller functions. It gets Map of parameters from
@@ -18,11 +25,27 @@ import java.util.TreeSet;
  * to workable types and check transformed data. It creates instances
  * of UserDao, Users and Date type time points to work with.
  * 
+ * With workers parameter the job is not run here but is split by 
+ * {@link DistributedCoordinator} to user index partitions for 
+ * {@link GenerationWorker} processes. Every worker sets its own 
+ * partition by partitionFrom and partitionTo parameters. Users are
+ * reproducible by seed parameter: user with index i gets the same 
+ * information and traffic on any worker. Random seed is chosen for 
+ * job without seed, so any job can be repeated by its seed.
+ * 
+ * In {@link JobType#EXTEND_USERS} job no users are created: users 
+ * stored in schema get traffic from their last stored minute to end
+ * date. Extension traffic is reproducible by seed and USER_ID. Stored
+ * users are read and extended by pages in USER_ID order.
+ * 
  * @author Aleksandr Ivanov
  */
 public class Controller {
     private static final DateFormat viewDateFormat =
             new SimpleDateFormat("dd.MM.yyyy HH:mm");
+    
+    /** Stored users read and extended at a time in extension job. */
+    private static final int STORED_USERS_PAGE = 1000;
     private static volatile Controller instance;
     private int usersQuantity;
     private Date startDate;
@@ -32,6 +55,28 @@ public class Controller {
     private String dbName;
     private String dbUserName;
     private String dbPassword;
+    private StorageMode storageMode;
+    private GenerationOrder generationOrder;
+    private JobType jobType;
+    private long seed;
+    private List<String> workers;
+    private int partitionFrom;
+    private int partitionTo;
+    private Map<String, String[]> jobParameters;
+    
+    /**
+     * Stored minutes quantity of the running or the last job. In 
+     * distributed job it is merged from reports of all workers.
+     */
+    private volatile long progressRows;
+    private LongConsumer progressListener;
+    private BooleanSupplier cancellationCheck;
+    
+    /**
+     * JDBC URL which replaces connection parameters. It is set only 
+     * for workers of embedded database checks.
+     */
+    private String dbLink;
     
     private Controller() {}
     
@@ -58,7 +103,12 @@ public class Controller {
      * 
      * Contains new Users quantity check to be an Integer more than 0.
      * Forbids lenient Date parse to avoid date writing and reading 
-     * misunderstanding.
+     * misunderstanding. Storage mode and generation order parameters 
+     * are optional, traffic is stored per minute user by user if they
+     * are absent. Seed, workers and partition parameters are optional
+     * too, random seed is chosen and all users are stored by this 
+     * process if they are absent. Users quantity and start date are not used
+     * in extension job.
      * 
      * @param parameters are null and emptiness checked request 
      * parameters
@@ -66,6 +116,9 @@ public class Controller {
      * Date insertion 
      * @throws NumberFormatException is thrown to Servlet to show 
      * invalid users quantity insertion 
+     * @throws IllegalArgumentException is thrown to Servlet to show
+     * unknown mode selection, invalid seed, workers or partition and
+     * workers for extension job
      */
     public void setParameters(Map<String, String[]> parameters) 
             throws ParseException {
@@ -75,82 +128,447 @@ public class Controller {
         this.dbUserName = parameters.get("dbUserName")[0];
         this.dbPassword = parameters.get("dbPassword")[0];
         
-        String usersQuantityString = parameters.get("usersQuantity")[0];
-        String startDateString = parameters.get("startDate")[0];
+        String jobTypeString = getOptionalParameter(parameters, "jobType");
         String endDateString = parameters.get("endDate")[0];
+        String storageModeString = getOptionalParameter(parameters, 
+                "storageMode");
+        String generationOrderString = getOptionalParameter(parameters, 
+                "generationOrder");
+        String seedString = getOptionalParameter(parameters, "seed");
+        String workersString = getOptionalParameter(parameters, "workers");
+        String partitionFromString = getOptionalParameter(parameters, 
+                "partitionFrom");
+        String partitionToString = getOptionalParameter(parameters, 
+                "partitionTo");
         
-        this.usersQuantity = Integer.parseInt(usersQuantityString);
-        if (this.usersQuantity < 1) {
-            throw new NumberFormatException("users quantity is less than 1");
+        this.jobType = parseOption(JobType.class, jobTypeString, 
+                JobType.CREATE_USERS, "job type");
+        
+        boolean isExtension = (jobType == JobType.EXTEND_USERS);
+        
+        if (isExtension) {
+            this.usersQuantity = 0;
+        } else {
+            String usersQuantityString = parameters.get("usersQuantity")[0];
+            
+            this.usersQuantity = Integer.parseInt(usersQuantityString);
+            if (this.usersQuantity < 1) {
+                throw new NumberFormatException(
+                        "users quantity is less than 1");
+            }
         }
 
         //forbid non-strict adherence to the SimpleDateFormat pattern
         viewDateFormat.setLenient(false);       
         
-        this.startDate = getDateByString(startDateString);
         this.endDate = getDateByString(endDateString);
-        if (startDate.getTime() > endDate.getTime()) {
-            throw new ParseException("start date goes after end date", 0);
+        if (isExtension) {
+            this.startDate = null;
+        } else {
+            this.startDate = getDateByString(parameters.get("startDate")[0]);
+            if (startDate.getTime() > endDate.getTime()) {
+                throw new ParseException("start date goes after end date", 
+                        0);
+            }
+        }
+        
+        this.storageMode = parseOption(StorageMode.class, storageModeString, 
+                StorageMode.PER_MINUTE, "storage mode");
+        this.generationOrder = parseOption(GenerationOrder.class, 
+                generationOrderString, GenerationOrder.USER_MAJOR, 
+                "generation order");
+        
+        this.seed = (seedString == null) 
+                ? new Random().nextLong() 
+                : parseOptionalNumber(seedString, "seed");
+        this.workers = (workersString == null) 
+                ? null 
+                : DistributedCoordinator.parseWorkers(workersString);
+        this.partitionFrom = (partitionFromString == null) 
+                ? 0 
+                : parseOptionalNumber(partitionFromString, "partition")
+                        .intValue();
+        this.partitionTo = (partitionToString == null) 
+                ? usersQuantity 
+                : parseOptionalNumber(partitionToString, "partition")
+                        .intValue();
+        if (partitionFrom < 0 || partitionFrom > partitionTo 
+                || partitionTo > usersQuantity) {
+            throw new IllegalArgumentException("partition is out of "
+                    + "users quantity");
+        }
+        if (isExtension && workers != null) {
+            throw new IllegalArgumentException("workers are not supported "
+                    + "for extension of stored users");
         }
+        this.jobParameters = new HashMap<>(parameters);
     }
 
     /**
      * Creates UserDao instance to store data. Divides time line
      * between start and end dates to minutes. Creates previously 
      * set users quantity instances and load users traffic to time
-     * points (minutes).
+     * points (minutes). In {@link GenerationOrder#WINDOW_MAJOR} order
+     * time line is divided and loaded by one day windows. If workers
+     * are set the job is passed to them. In extension job stored users
+     * are read instead of creation.
      * 
+     * @return stored minutes quantity of all users
      * @throws SQLException handling is implied to do in Servlet 
      * to show exception to program user.
      * @throws ClassNotFoundException re-thrown from getConnection()
      * Handling is implied to do in Servlet to show exception to 
      * program user
+     * @throws IOException if some worker is not reachable or fails.
+     * Handling is implied to do in Servlet to show exception to 
+     * program user
+     */
+    long storeTrafficPerMinute()
+            throws ClassNotFoundException, SQLException, IOException {
+        if (workers != null) {
+            DistributedCoordinator coordinator = new DistributedCoordinator(
+                    workers, mergedRows -> progressRows = mergedRows);
+            
+            progressRows = 0;
+            return coordinator.run(jobParameters, usersQuantity, seed);
+        }
+        
+        UserDao userDao = (dbLink == null) 
+                ? new UserDao(hostName, portName, dbName, dbUserName, 
+                        dbPassword, storageMode)
+                : new UserDao(dbLink, dbUserName, dbPassword, storageMode);
+        
+        return storeTrafficPerMinute(userDao);
+    }
+
+    /**
+     * Loads and stores users traffic with given UserDao instead of
+     * the one defined by connection parameters. 
+     * 
+     * @param userDao to store users traffic
+     * @return stored minutes quantity of partition users
+     * @throws SQLException re-thrown from UserDao
+     * @throws ClassNotFoundException re-thrown from UserDao
+     * @throws IllegalArgumentException if extension job finds no 
+     * stored traffic
+     */
+    long storeTrafficPerMinute(UserDao userDao)
+            throws ClassNotFoundException, SQLException {
+        progressRows = 0;
+        userDao.setCancellationCheck(cancellationCheck);
+        if (jobType == JobType.EXTEND_USERS) {
+            return extendStoredUsers(userDao);
+        }
+        
+        List<User> users = getUsersList(partitionFrom, partitionTo);
+        
+        userDao.setRegeneratedRange(startDate, endDate);
+        return storeTraffic(userDao, users, 
+                Collections.nCopies(users.size(), startDate), 0);
+    }
+
+    /**
+     * Extends users stored in schema by pages of 
+     * {@link #STORED_USERS_PAGE} users in USER_ID order, so memory 
+     * doesn't grow with stored users quantity. Every page is stored in
+     * generation order of the job before the next one is read.
+     * 
+     * @param userDao to read and store users traffic
+     * @return stored minutes quantity of all users
+     * @throws SQLException re-thrown from UserDao
+     * @throws ClassNotFoundException re-thrown from UserDao
+     * @throws IllegalArgumentException if no users have traffic in
+     * storage mode of the job
+     */
+    private long extendStoredUsers(UserDao userDao)
+            throws ClassNotFoundException, SQLException {
+        long storedRows = 0;
+        int afterUserId = 0;
+        boolean isFirstPage = true;
+        
+        while (true) {
+            List<UserDao.StoredUser> storedUsers = userDao.readStoredUsers(
+                    userId -> getStoredUserSeed(seed, userId), afterUserId,
+                    STORED_USERS_PAGE);
+            
+            if (isFirstPage && storedUsers.isEmpty()) {
+                throw new IllegalArgumentException("nothing to extend, no "
+                        + "users have traffic in " + storageMode 
+                        + " storage mode");
+            }
+            
+            List<User> users = new ArrayList<>();
+            List<Date> userStarts = new ArrayList<>();
+            
+            for (UserDao.StoredUser storedUser : storedUsers) {
+                Date userStart = new Date(
+                        storedUser.getLastMinute().getTime() + 60000L);
+                
+                if (userStart.getTime() < endDate.getTime()) {
+                    users.add(storedUser.getUser());
+                    userStarts.add(userStart);
+                }
+            }
+            storedRows = storeTraffic(userDao, users, userStarts, storedRows);
+            userDao.forgetCommittedUsers();
+            if (storedUsers.size() < STORED_USERS_PAGE) {
+                return storedRows;
+            }
+            afterUserId = storedUsers.get(storedUsers.size() - 1).getUserId();
+            isFirstPage = false;
+        }
+    }
+
+    /**
+     * Loads and stores traffic of users from their starts to end date
+     * in generation order of the job.
+     * 
+     * @param userDao to store users traffic
+     * @param users whose traffic to load
+     * @param userStarts the first minute to load for every user
+     * @param storedRows minutes quantity stored by the job before
+     * @return stored minutes quantity including these users
+     * @throws SQLException re-thrown from UserDao
+     * @throws ClassNotFoundException re-thrown from UserDao
      */
-    void storeTrafficPerMinute()
+    private long storeTraffic(UserDao userDao, List<User> users,
+            List<Date> userStarts, long storedRows)
             throws ClassNotFoundException, SQLException {
-        UserDao userDao = new UserDao(hostName, portName,
-                dbName, dbUserName, dbPassword);
-        Set<Date> intervalByMinutes = getTimePoints();
-        List<User> users = getUsersList(usersQuantity);
+        if (generationOrder == GenerationOrder.WINDOW_MAJOR) {
+            return storeTrafficByWindows(userDao, users, userStarts, 
+                    storedRows);
+        }
         
-        for (User user : users) {
+        Set<Date> intervalByMinutes = null;
+        Date intervalStart = null;
+        
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            
+            /* users with the same start share the same time points */
+            if (!userStarts.get(i).equals(intervalStart)) {
+                intervalStart = userStarts.get(i);
+                intervalByMinutes = getTimePoints(intervalStart, endDate);
+            }
             user.loadTraffic(intervalByMinutes);
             userDao.storeUserTraffic(user);
+            storedRows = notifyProgress(storedRows, user);
         }
+        return storedRows;
     }
 
     /**
-     * Generates list with received User instances amount.
+     * Walks time line by windows which end at midnights, so every
+     * window matches one day of TRAFFIC_DAILY rows or of day 
+     * partitioned TRAFFIC table. All users traffic is loaded for the
+     * window and stored in one transaction before going to the next 
+     * one. User traffic is not loaded before its own start.
      * 
-     * @param newUsersCount to generate User instances amount.
+     * @param userDao to store users traffic
+     * @param users whose traffic to load
+     * @param userStarts the first minute to load for every user
+     * @param storedRows minutes quantity stored by the job before
+     * @return stored minutes quantity including these users
+     * @throws SQLException re-thrown from UserDao
+     * @throws ClassNotFoundException re-thrown from UserDao
+     */
+    private long storeTrafficByWindows(UserDao userDao, List<User> users,
+            List<Date> userStarts, long storedRows)
+            throws ClassNotFoundException, SQLException {
+        if (users.isEmpty()) {
+            return storedRows;
+        }
+        
+        Date windowStart = Collections.min(userStarts);
+        
+        while (windowStart.getTime() < endDate.getTime()) {
+            Date windowEnd = getNextDayStart(windowStart);
+            
+            if (windowEnd.getTime() > endDate.getTime()) {
+                windowEnd = endDate;
+            }
+            
+            Set<Date> windowByMinutes = getTimePoints(windowStart, windowEnd);
+            List<User> windowUsers = new ArrayList<>();
+            
+            for (int i = 0; i < users.size(); i++) {
+                User user = users.get(i);
+                Date userStart = userStarts.get(i);
+                
+                if (userStart.getTime() >= windowEnd.getTime()) {
+                    continue;
+                }
+                if (userStart.getTime() > windowStart.getTime()) {
+                    user.loadTraffic(getTimePoints(userStart, windowEnd));
+                } else {
+                    user.loadTraffic(windowByMinutes);
+                }
+                windowUsers.add(user);
+            }
+            userDao.storeUsersTraffic(windowUsers);
+            
+            for (User user : windowUsers) {
+                storedRows = notifyProgress(storedRows, user);
+            }
+            windowStart = windowEnd;
+        }
+        return storedRows;
+    }
+
+    /**
+     * Adds stored user traffic to progress shown by view page and 
+     * notifies progress listener if it is set.
+     * 
+     * @param storedRows minutes quantity stored before
+     * @param user whose traffic was stored just now
+     * @return minutes quantity stored including user traffic
+     */
+    private long notifyProgress(long storedRows, User user) {
+        long currentRows = storedRows + user.getTraffic().size();
+        
+        progressRows = currentRows;
+        if (progressListener != null) {
+            progressListener.accept(currentRows);
+        }
+        return currentRows;
+    }
+
+    /**
+     * Generates list of User instances with indexes in received range.
+     * Users are reproducible by job seed and user index.
+     * 
+     * @param fromIndex inclusive index of the first user
+     * @param toIndex exclusive index of the last user
      * @return List of generated Users
      */
-    private List<User> getUsersList(int newUsersCount) {
+    private List<User> getUsersList(int fromIndex, int toIndex) {
         List<User> users = new ArrayList<>();
         
-        for (int i = 0; i < newUsersCount; i++) {
-            User newUser = new User();
-            users.add(newUser);
+        for (int i = fromIndex; i < toIndex; i++) {
+            users.add(new User(getUserSeed(seed, i)));
         }
         return users;
     }
+
+    /**
+     * Mixes job seed and user index (SplitMix64 finalizer), so close
+     * indexes give unrelated seeds.
+     * 
+     * @param jobSeed seed of the whole job
+     * @param userIndex index of user in job
+     * @return seed of user
+     */
+    private static long getUserSeed(long jobSeed, int userIndex) {
+        long z = jobSeed + (userIndex + 1) * 0x9E3779B97F4A7C15L;
+        
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+  
+    /**
+     * Mixes job seed and USER_ID of stored user to seed its extension
+     * traffic. Job seed is inverted, so extension traffic doesn't 
+     * repeat traffic of user created by the same seed with index equal
+     * to USER_ID.
+     * 
+     * @param jobSeed seed of the whole job
+     * @param userId USERS table ID of user
+     * @return seed of user extension traffic
+     */
+    private static long getStoredUserSeed(long jobSeed, int userId) {
+        return getUserSeed(~jobSeed, userId);
+    }
   
     /**
      * Divide time line between two dates on time points per minute.
      * 
+     * @param from inclusive time line start
+     * @param to exclusive time line end
      * @return natural-ordered TreeSet of minutes
      */
-    private Set<Date> getTimePoints() {
+    private Set<Date> getTimePoints(Date from, Date to) {
         Set<Date> intervalByMinutes = new TreeSet<>();
-        Date currentMinute = startDate;
+        Date currentMinute = from;
         
-        while (currentMinute.getTime() < endDate.getTime()) {
+        while (currentMinute.getTime() < to.getTime()) {
             intervalByMinutes.add(currentMinute);
             currentMinute = new Date(currentMinute.getTime() + 60000L);
         }
         return intervalByMinutes;
     }
     
+    /**
+     * Returns midnight which follows given time.
+     * 
+     * @param date any time point
+     * @return the next day start
+     */
+    private Date getNextDayStart(Date date) {
+        Calendar calendar = Calendar.getInstance();
+        
+        calendar.setTime(TrafficCodec.getDayStart(date));
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        return calendar.getTime();
+    }
+    
+    /**
+     * Parses optional integer parameter.
+     * 
+     * @param value parameter value
+     * @param name parameter name for error message
+     * @return parsed value
+     * @throws IllegalArgumentException if value is not an integer
+     */
+    private Long parseOptionalNumber(String value, String name) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("\"" + value + "\" " + name
+                    + " is not an integer");
+        }
+    }
+    
+    /**
+     * Parses optional mode parameter.
+     * 
+     * @param type mode enum
+     * @param value parameter value or null
+     * @param defaultValue mode to use if parameter is absent
+     * @param name parameter name for error message
+     * @return parsed mode
+     * @throws IllegalArgumentException if value is not a mode name
+     */
+    private <E extends Enum<E>> E parseOption(Class<E> type, String value,
+            E defaultValue, String name) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("\"" + value + "\" " + name
+                    + " is unknown");
+        }
+    }
+    
+    /**
+     * Returns first value of parameter which view page may not send.
+     * 
+     * @param parameters request parameters
+     * @param name parameter name
+     * @return parameter value or null if it is absent or empty
+     */
+    private String getOptionalParameter(Map<String, String[]> parameters,
+            String name) {
+        String[] values = parameters.get(name);
+        
+        if (values == null || values.length == 0 || values[0].isEmpty()) {
+            return null;
+        }
+        return values[0];
+    }
+    
     /**
      * Checks String matching to view date format pattern and parses
      * String to Date
@@ -174,4 +592,53 @@ public class Controller {
         }
         return viewDateFormat.parse(dateString);
     }
+    
+    /**
+     * Returns seed of the job set by the last parameters, either given
+     * or chosen randomly.
+     */
+    long getSeed() {
+        return seed;
+    }
+    
+    /**
+     * Returns stored minutes quantity of the running job, so view page
+     * can show progress while Servlet waits for the job. It is merged
+     * from all workers in distributed job.
+     */
+    public long getProgressRows() {
+        return progressRows;
+    }
+    
+    /**
+     * Sets JDBC URL to store traffic to instead of MySQL defined by 
+     * connection parameters.
+     * 
+     * @param dbLink JDBC URL or null to use connection parameters
+     */
+    void setDbLink(String dbLink) {
+        this.dbLink = dbLink;
+    }
+    
+    /**
+     * Sets listener which receives stored minutes quantity after 
+     * every stored user traffic of this process. It is used by worker
+     * to report progress to coordinator.
+     * 
+     * @param progressListener listener or null
+     */
+    void setProgressListener(LongConsumer progressListener) {
+        this.progressListener = progressListener;
+    }
+    
+    /**
+     * Sets check which cancels the job when it returns true. UserDao
+     * asks it between traffic batches, so job is cancelled inside long
+     * user traffic too. It is used by worker whose coordinator is gone.
+     * 
+     * @param cancellationCheck check or null
+     */
+    void setCancellationCheck(BooleanSupplier cancellationCheck) {
+        this.cancellationCheck = cancellationCheck;
+    }
 }
@@ -0,0 +1,263 @@
+package com.ivanov.providerdbcreator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Class splits generation job by user indexes to contiguous
+ * partitions, one per {@link GenerationWorker}, runs them in parallel
+ * and merges workers progress and results. Worker PROGRESS reports 
+ * are heartbeats too: worker which sends nothing for a few report 
+ * periods is failed.
+ *
+ * Every partition gets the same job seed, so users are the same as
+ * if the whole job was run by one process. Only USER_ID order in
+ * USERS table depends on workers timing.
+ *
+ * @author Aleksandr Ivanov
+ */
+final class DistributedCoordinator {
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int READ_TIMEOUT_MILLIS =
+            (int) (5 * GenerationWorker.PROGRESS_PERIOD_MILLIS);
+    private final List<String> workers;
+    private final LongConsumer progressListener;
+
+    /**
+     * Stored minutes quantity of all partitions by their last reports.
+     */
+    private final AtomicLong storedRows = new AtomicLong();
+
+    /**
+     * Sockets of running partitions, they are closed when job fails.
+     */
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+    private volatile boolean isCancelled;
+
+    /**
+     * @param workers worker addresses in host:port form
+     * @param progressListener receives merged stored minutes quantity
+     * after every worker report, or null
+     */
+    DistributedCoordinator(List<String> workers,
+            LongConsumer progressListener) {
+        this.workers = workers;
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Returns stored minutes quantity of all workers by their last
+     * reports.
+     */
+    long getStoredRows() {
+        return storedRows.get();
+    }
+
+    /**
+     * Parses comma separated worker addresses.
+     *
+     * @param workersString addresses like "localhost:9101, localhost:9102"
+     * @return List of host:port addresses
+     * @throws IllegalArgumentException if some address has no valid port
+     */
+    static List<String> parseWorkers(String workersString) {
+        List<String> workers = new ArrayList<>();
+
+        for (String worker : workersString.split(",")) {
+            String address = worker.trim();
+            int separator = address.lastIndexOf(':');
+
+            if (separator < 1 || !address.substring(separator + 1)
+                    .matches("\\d{1,5}")) {
+                throw new IllegalArgumentException("\"" + address
+                        + "\" worker address doesn't match host:port");
+            }
+            workers.add(address);
+        }
+        return workers;
+    }
+
+    /**
+     * Runs job partitions on workers and waits for them in completion
+     * order. The first failed partition fails the job at once: other
+     * partitions are cancelled and their sockets are closed, so their
+     * workers cancel them too and are free for the next job.
+     *
+     * @param parameters job parameters as view page sends them
+     * @param usersQuantity users quantity of the whole job
+     * @param seed job seed which is sent to every worker
+     * @return stored minutes quantity of all workers
+     * @throws IOException with failure of the first failed worker
+     */
+    long run(Map<String, String[]> parameters, int usersQuantity, long seed)
+            throws IOException {
+        int partitions = Math.min(workers.size(), usersQuantity);
+        ExecutorService executor = Executors.newFixedThreadPool(partitions);
+        CompletionService<Long> completion =
+                new ExecutorCompletionService<>(executor);
+        List<Future<Long>> results = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < partitions; i++) {
+                String worker = workers.get(i);
+                Map<String, String> job = getPartitionJob(parameters, seed,
+                        (int) ((long) usersQuantity * i / partitions),
+                        (int) ((long) usersQuantity * (i + 1) / partitions));
+
+                results.add(completion.submit(
+                        () -> runPartition(worker, job)));
+            }
+
+            long rows = 0;
+
+            for (int i = 0; i < partitions; i++) {
+                try {
+                    rows += completion.take().get();
+                } catch (ExecutionException e) {
+                    cancelPartitions(results);
+                    throw new IOException(e.getCause().getMessage(),
+                            e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancelPartitions(results);
+                    throw new IOException("coordinator is interrupted", e);
+                }
+            }
+            return rows;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Cancels partitions and closes their sockets. Partition which
+     * opens its socket later closes it by itself.
+     */
+    private void cancelPartitions(List<Future<Long>> results) {
+        isCancelled = true;
+        for (Future<Long> result : results) {
+            result.cancel(true);
+        }
+        for (Socket socket : openSockets) {
+            closeQuietly(socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            /* partition is failed already, nothing to report */
+        }
+    }
+
+    /**
+     * Copies job parameters for one partition without workers list.
+     */
+    private Map<String, String> getPartitionJob(
+            Map<String, String[]> parameters, long seed,
+            int partitionFrom, int partitionTo) {
+        Map<String, String> job = new HashMap<>();
+
+        for (Map.Entry<String, String[]> entry : parameters.entrySet()) {
+            job.put(entry.getKey(), entry.getValue()[0]);
+        }
+        job.remove("workers");
+        job.put("seed", String.valueOf(seed));
+        job.put("partitionFrom", String.valueOf(partitionFrom));
+        job.put("partitionTo", String.valueOf(partitionTo));
+        return job;
+    }
+
+    /**
+     * Adds partition progress to merged stored minutes quantity and
+     * passes it to listener. Partition threads merge one at a time, so
+     * listener never gets older merged quantity after newer one.
+     *
+     * @param rowsDelta minutes stored by partition since its last report
+     */
+    private synchronized void mergeProgress(long rowsDelta) {
+        long mergedRows = storedRows.addAndGet(rowsDelta);
+
+        if (progressListener != null) {
+            progressListener.accept(mergedRows);
+        }
+    }
+
+    /**
+     * Sends partition to worker and follows its reports till the end.
+     *
+     * @return stored minutes quantity of partition
+     * @throws IOException if worker is not reachable, reports error or
+     * is silent longer than read timeout
+     */
+    private long runPartition(String worker, Map<String, String> job)
+            throws IOException {
+        int separator = worker.lastIndexOf(':');
+        InetSocketAddress address = new InetSocketAddress(
+                worker.substring(0, separator),
+                Integer.parseInt(worker.substring(separator + 1)));
+        String failure;
+        long partitionRows = 0;
+
+        try (Socket socket = new Socket()) {
+            openSockets.add(socket);
+            if (isCancelled) {
+                throw new IOException("job is cancelled");
+            }
+            socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream()));
+
+            GenerationWorker.writeJob(out, job);
+
+            while (true) {
+                String type = in.readUTF();
+
+                if (GenerationWorker.ERROR.equals(type)) {
+                    failure = in.readUTF();
+                    break;
+                }
+
+                long rows = in.readLong();
+
+                mergeProgress(rows - partitionRows);
+                partitionRows = rows;
+                if (GenerationWorker.DONE.equals(type)) {
+                    return rows;
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            failure = "no report for " + READ_TIMEOUT_MILLIS + " ms";
+        } catch (IOException e) {
+            failure = String.valueOf(e);
+        } finally {
+            openSockets.removeIf(Socket::isClosed);
+        }
+        throw new IOException("worker " + worker + " failed: " + failure);
+    }
+}
@@ -0,0 +1,24 @@
+package com.ivanov.providerdbcreator;
+
+/**
+ * Defines order in which Controller generates and stores users 
+ * traffic through the time line.
+ * 
+ * @author Aleksandr Ivanov
+ */
+public enum GenerationOrder {
+    
+    /** 
+     * Every user traffic is generated and stored through the whole 
+     * time line before next user.
+     */
+    USER_MAJOR,
+    
+    /** 
+     * Time line is walked by one day windows. All users traffic is
+     * generated and stored for the window before next window. Memory 
+     * and transaction size are bounded by window and do not grow with
+     * time line length.
+     */
+    WINDOW_MAJOR
+}
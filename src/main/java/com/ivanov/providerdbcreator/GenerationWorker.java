@@ -0,0 +1,215 @@
+package com.ivanov.providerdbcreator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Standalone worker process of distributed generation. It listens on
+ * given port (on loopback interface unless bind address is given),
+ * receives job partitions from {@link DistributedCoordinator} one by
+ * one and runs them by Controller in this JVM.
+ *
+ * Conversation is binary by DataInput/DataOutput streams. Coordinator
+ * sends parameters count and name - value pairs of the same parameters
+ * which view page sends to Servlet plus seed and partition range.
+ * Database password is among them and is not encrypted, so worker is
+ * meant for loopback or trusted network.
+ * Worker answers with PROGRESS messages with stored minutes quantity
+ * every second and finishes with DONE and stored minutes quantity or
+ * ERROR and exception description. Coordinator sends nothing after
+ * the job, so end of its stream or failed PROGRESS means it has failed
+ * the partition or is gone: the job is cancelled after the current
+ * traffic batch and the next job is accepted.
+ *
+ * Usage: java -cp WEB-INF/classes:WEB-INF/lib/*
+ * com.ivanov.providerdbcreator.GenerationWorker port [bindAddress
+ * [jdbcUrl]]
+ *
+ * JDBC URL replaces database connection parameters of every job, it
+ * lets to run workers against embedded database in checks.
+ *
+ * @author Aleksandr Ivanov
+ */
+public final class GenerationWorker {
+    static final String PROGRESS = "PROGRESS";
+    static final String DONE = "DONE";
+    static final String ERROR = "ERROR";
+    static final long PROGRESS_PERIOD_MILLIS = 1000L;
+
+    private GenerationWorker() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println(
+                    "Usage: GenerationWorker port [bindAddress [jdbcUrl]]");
+            System.exit(2);
+        }
+
+        int port = Integer.parseInt(args[0]);
+        InetAddress bindAddress = (args.length > 1)
+                ? InetAddress.getByName(args[1])
+                : InetAddress.getLoopbackAddress();
+
+        if (args.length > 2) {
+            Controller.getInstance().setDbLink(args[2]);
+        }
+
+        try (ServerSocket serverSocket =
+                new ServerSocket(port, 50, bindAddress)) {
+            System.out.println("Generation worker listens on "
+                    + serverSocket.getLocalSocketAddress());
+
+            while (true) {
+                try (Socket socket = serverSocket.accept()) {
+                    runJob(socket);
+                } catch (IOException e) {
+                    System.err.println("Job connection failed: " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes job parameters to coordinator side stream.
+     *
+     * @param out stream to worker
+     * @param parameters name - value pairs
+     * @throws IOException if connection fails
+     */
+    static void writeJob(DataOutputStream out, Map<String, String> parameters)
+            throws IOException {
+        out.writeInt(parameters.size());
+        for (Map.Entry<String, String> entry : parameters.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads job parameters in the form of request parameters Map.
+     */
+    private static Map<String, String[]> readJob(DataInputStream in)
+            throws IOException {
+        Map<String, String[]> parameters = new HashMap<>();
+        int count = in.readInt();
+
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+
+            parameters.put(name, new String[] {in.readUTF()});
+        }
+        return parameters;
+    }
+
+    /**
+     * Runs one job partition and reports its progress and result.
+     * Any job failure is sent to coordinator instead of closing
+     * connection silently. Closed coordinator stream or failed progress
+     * report cancels the job: UserDao throws CancellationException
+     * after the next traffic batch and rolls back the user transaction,
+     * progress listener throws it after the next stored user.
+     */
+    private static void runJob(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+        Map<String, String[]> parameters = readJob(in);
+
+        /* worker never passes the job further */
+        parameters.remove("workers");
+        
+        AtomicLong storedRows = new AtomicLong();
+        AtomicBoolean isCancelled = new AtomicBoolean();
+        ScheduledExecutorService progressSender =
+                Executors.newSingleThreadScheduledExecutor();
+        Controller controller = Controller.getInstance();
+
+        progressSender.scheduleAtFixedRate(() -> {
+            try {
+                sendMessage(out, PROGRESS, storedRows.get());
+            } catch (IOException e) {
+                System.err.println("Job is cancelled, progress is not sent: "
+                        + e);
+                isCancelled.set(true);
+                progressSender.shutdown();
+            }
+        }, PROGRESS_PERIOD_MILLIS, PROGRESS_PERIOD_MILLIS,
+                TimeUnit.MILLISECONDS);
+
+        Thread coordinatorWatcher = new Thread(() -> {
+            try {
+                if (in.read() < 0 && !progressSender.isShutdown()) {
+                    System.err.println("Job is cancelled, "
+                            + "coordinator closed connection");
+                    isCancelled.set(true);
+                }
+            } catch (IOException e) {
+                isCancelled.set(true);
+            }
+        });
+
+        coordinatorWatcher.setDaemon(true);
+        coordinatorWatcher.start();
+        try {
+            controller.setParameters(parameters);
+            controller.setCancellationCheck(isCancelled::get);
+            controller.setProgressListener(rows -> {
+                if (isCancelled.get()) {
+                    throw new CancellationException(
+                            "coordinator doesn't receive progress");
+                }
+                storedRows.set(rows);
+            });
+
+            long rows = controller.storeTrafficPerMinute();
+
+            stopProgress(progressSender);
+            sendMessage(out, DONE, rows);
+        } catch (Exception e) {
+            stopProgress(progressSender);
+            synchronized (out) {
+                out.writeUTF(ERROR);
+                out.writeUTF(String.valueOf(e));
+                out.flush();
+            }
+        } finally {
+            controller.setProgressListener(null);
+            controller.setCancellationCheck(null);
+        }
+    }
+
+    private static void sendMessage(DataOutputStream out, String type,
+            long rows) throws IOException {
+        synchronized (out) {
+            out.writeUTF(type);
+            out.writeLong(rows);
+            out.flush();
+        }
+    }
+
+    private static void stopProgress(ScheduledExecutorService progressSender) {
+        progressSender.shutdownNow();
+        try {
+            progressSender.awaitTermination(PROGRESS_PERIOD_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.ivanov.providerdbcreator;
+
+/**
+ * Defines which users traffic Controller generates.
+ * 
+ * @author Aleksandr Ivanov
+ */
+public enum JobType {
+    
+    /** 
+     * New random users are created and their traffic is generated 
+     * from start date to end date.
+     */
+    CREATE_USERS,
+    
+    /** 
+     * Users already stored in schema get traffic from the minute 
+     * after their last stored minute to end date. Start date and 
+     * users quantity are not used.
+     */
+    EXTEND_USERS
+}
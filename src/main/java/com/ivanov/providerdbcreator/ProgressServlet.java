@@ -0,0 +1,32 @@
+package com.ivanov.providerdbcreator;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Class answers stored minutes quantity of the running job as plain
+ * text. Main view page polls it while Servlet waits for the job, so
+ * progress of long and distributed jobs is seen before their result.
+ *
+ * @author Aleksandr Ivanov
+ */
+@WebServlet("/progress")
+public class ProgressServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void doGet(
+            HttpServletRequest request,
+            HttpServletResponse response)
+            throws ServletException, IOException {
+        response.setContentType("text/plain");
+        response.setHeader("Cache-Control", "no-cache");
+        response.getWriter().print(
+                Controller.getInstance().getProgressRows());
+    }
+}
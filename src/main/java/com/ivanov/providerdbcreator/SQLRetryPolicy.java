@@ -0,0 +1,150 @@
+package com.ivanov.providerdbcreator;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Class decides which SQL errors are worth to repeat the whole
+ * transaction and how long to wait before the next attempt.
+ *
+ * Deadlocks and lock wait timeouts are expected under SERIALIZABLE
+ * isolation when several jobs write to the same tables. They are
+ * recognized by SQLTransactionRollbackException, by SQLState ("40001"
+ * is serialization failure, "40P01" is detected deadlock) and by MySQL
+ * error codes 1213 (deadlock, reported with "40001" state) and 1205 
+ * (lock wait timeout, reported with general "HY000" state). Other "40"
+ * states, like integrity constraint violation at commit, and other 
+ * transient errors, like lost connection, fail again on repeat. Wait
+ * time grows exponentially with random jitter, so conflicting jobs do
+ * not meet again at the same moment.
+ *
+ * @author Aleksandr Ivanov
+ */
+final class SQLRetryPolicy {
+    static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MILLIS = 100L;
+    private static final long MAX_BACKOFF_MILLIS = 5000L;
+    private static final int MYSQL_LOCK_WAIT_TIMEOUT = 1205;
+    private static final int MYSQL_DEADLOCK = 1213;
+
+    private SQLRetryPolicy() {}
+
+    /**
+     * Transaction which opens, commits or rolls back its own 
+     * connection, so it can be repeated as a whole.
+     */
+    interface Transaction {
+        void run() throws SQLException, ClassNotFoundException;
+    }
+
+    /**
+     * Waits given time before the next attempt.
+     */
+    interface Sleeper {
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    /**
+     * Runs transaction and repeats it after transient conflicts up to
+     * {@link #MAX_ATTEMPTS} times.
+     *
+     * @param transaction to run
+     * @throws SQLException if it is not transient or attempts are over
+     * @throws ClassNotFoundException re-thrown from transaction
+     */
+    static void runWithRetries(Transaction transaction)
+            throws SQLException, ClassNotFoundException {
+        runWithRetries(transaction, Thread::sleep);
+    }
+
+    /**
+     * Runs transaction and repeats it after transient conflicts up to
+     * {@link #MAX_ATTEMPTS} times, waiting by given sleeper.
+     *
+     * @param transaction to run
+     * @param sleeper waits before every repeat
+     * @throws SQLException if it is not transient or attempts are over
+     * @throws ClassNotFoundException re-thrown from transaction
+     */
+    static void runWithRetries(Transaction transaction, Sleeper sleeper)
+            throws SQLException, ClassNotFoundException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transaction.run();
+                return;
+            } catch (SQLException e) {
+                if (attempt >= MAX_ATTEMPTS || !isTransient(e)) {
+                    throw e;
+                }
+                sleepBeforeRetry(attempt, e, sleeper);
+            }
+        }
+    }
+
+    /**
+     * Checks exception, its chained exceptions and causes for
+     * transient transaction conflict.
+     *
+     * @param exception caught from rolled back transaction
+     * @return true if the same transaction may pass on repeat
+     */
+    static boolean isTransient(SQLException exception) {
+        Throwable current = exception;
+
+        while (current != null) {
+            if (current instanceof SQLException
+                    && isTransientItself((SQLException) current)) {
+                return true;
+            }
+
+            Throwable next = (current instanceof SQLException)
+                    ? ((SQLException) current).getNextException()
+                    : null;
+
+            current = (next != null) ? next : current.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * Sleeps random time between zero and exponentially growing
+     * limit before the next attempt.
+     *
+     * @param attempt number of failed attempt starting from 1
+     * @param exception which caused retry, it is re-thrown if waiting
+     * is interrupted
+     * @param sleeper waits chosen time
+     * @throws SQLException if thread is interrupted
+     */
+    private static void sleepBeforeRetry(int attempt, SQLException exception,
+            Sleeper sleeper) throws SQLException {
+        try {
+            sleeper.sleep(ThreadLocalRandom.current().nextLong(
+                    getBackoffLimit(attempt) + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw exception;
+        }
+    }
+
+    /**
+     * @param attempt number of failed attempt starting from 1
+     * @return the longest wait before the next attempt in milliseconds
+     */
+    static long getBackoffLimit(int attempt) {
+        return Math.min(MAX_BACKOFF_MILLIS,
+                BASE_BACKOFF_MILLIS << Math.min(attempt, 16));
+    }
+
+    private static boolean isTransientItself(SQLException exception) {
+        String sqlState = exception.getSQLState();
+        int errorCode = exception.getErrorCode();
+
+        return exception instanceof SQLTransactionRollbackException
+                || "40001".equals(sqlState)
+                || "40P01".equals(sqlState)
+                || errorCode == MYSQL_DEADLOCK
+                || errorCode == MYSQL_LOCK_WAIT_TIMEOUT;
+    }
+}
@@ -5,8 +5,6 @@ import java.sql.SQLException;
 import java.text.ParseException;
 import java.util.Map;
 
-import javax.servlet.RequestDispatcher;
-import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -34,6 +32,8 @@ public class Servlet extends HttpServlet {
             ". Wrong users quantity. It should be an integer and > 0.";
     private static final String DATE_PARSE_ERROR =
             ". Wrong date. Format example: 13.01.2012 01:57";
+    private static final String OPTION_PARSE_ERROR =
+            ". Wrong mode, seed or workers.";
     
     /** 
      * Main functions of method is to get parameters from view page,
@@ -64,25 +64,29 @@ public class Servlet extends HttpServlet {
          * 
          * exceptions are handling to show on view as result
          */
-        if ("succesful".equals(requestParametersValidation)) {
-            try {
-                Controller controller = Controller.getInstance();
-                Map<String, String[]> parameters = request.getParameterMap();
-                
-                controller.setParameters(parameters);
-                controller.storeTrafficPerMinute();
-                resultBuilder.append("Last operation passed successfully!");
-            } catch (ClassNotFoundException | SQLException e) {
-                resultBuilder.append(error);
-                resultBuilder.append(e);
-            } catch (ParseException e) {
-                resultBuilder.append(error);
-                resultBuilder.append(e);
-                resultBuilder.append(DATE_PARSE_ERROR);
-            } catch (NumberFormatException e) {
+        if (ServletParameters.SUCCESSFUL.equals(requestParametersValidation)) {
+            Controller controller = Controller.getInstance();
+            Map<String, String[]> parameters = request.getParameterMap();
+            String parametersSetting = 
+                    setControllerParameters(controller, parameters);
+            
+            if (ServletParameters.SUCCESSFUL.equals(parametersSetting)) {
+                try {
+                    long storedRows = controller.storeTrafficPerMinute();
+                    resultBuilder.append(
+                            "Last operation passed successfully! ");
+                    resultBuilder.append(storedRows);
+                    resultBuilder.append(" traffic minutes stored. Seed: ");
+                    resultBuilder.append(controller.getSeed());
+                    resultBuilder.append(".");
+                } catch (ClassNotFoundException | SQLException | IOException 
+                        | IllegalArgumentException e) {
+                    resultBuilder.append(error);
+                    resultBuilder.append(e);
+                }
+            } else {
                 resultBuilder.append(error);
-                resultBuilder.append(e);
-                resultBuilder.append(USERS_PARSE_ERROR);
+                resultBuilder.append(parametersSetting);
             }
         } else {
             resultBuilder.append(error);
@@ -94,15 +98,40 @@ public class Servlet extends HttpServlet {
          * Received parameters and result is being set as request attributes to
          * be shown on view 
          */
-        setRequestAttributes(request, result);
-        forwardIt(request, response);
+        ServletParameters.setRequestAttributes(request, result);
+        ServletParameters.forward(getServletContext(), "/index.jsp", 
+                request, response);
+    }
+    
+    /**
+     * Sets parameters to controller and turns their conversion 
+     * exceptions into error message. Exceptions of generation itself
+     * are not handled here, so they are not shown as wrong parameters.
+     * 
+     * @param controller to set parameters
+     * @param parameters request parameters Map
+     * @return String of parameters setting result
+     */
+    private String setControllerParameters(Controller controller,
+            Map<String, String[]> parameters) {
+        try {
+            controller.setParameters(parameters);
+            return ServletParameters.SUCCESSFUL;
+        } catch (ParseException e) {
+            return e + DATE_PARSE_ERROR;
+        } catch (NumberFormatException e) {
+            return e + USERS_PARSE_ERROR;
+        } catch (IllegalArgumentException e) {
+            return e + OPTION_PARSE_ERROR;
+        }
     }
     
     /**
      * Parameters Map is filling by Map which represents 
      * HttpServletRequest parameters. First element in parameters 
      * values arrays is taken because it is known that view page send
-     * request with only one value per parameter.
+     * request with only one value per parameter. Users quantity and
+     * start date are not required to extend stored users.
      * 
      * @param request provides parameters Map
      * @return String of validation result
@@ -111,74 +140,20 @@ public class Servlet extends HttpServlet {
         String usersQuantityStr = request.getParameter("usersQuantity");
         String startDate = request.getParameter("startDate");
         String endDate = request.getParameter("endDate");
-        String hostName = request.getParameter("hostName");
-        String portName = request.getParameter("portName");
-        String dbName = request.getParameter("dbName");
-        String dbUserName = request.getParameter("dbUserName");
-        String dbPassword = request.getParameter("dbPassword");
+        boolean isExtension = 
+                JobType.EXTEND_USERS.name().equals(
+                        request.getParameter("jobType"));
         
-        if (usersQuantityStr == null || usersQuantityStr.isEmpty()) {
+        if (!isExtension 
+                && (usersQuantityStr == null || usersQuantityStr.isEmpty())) {
             return "users quantity is empty.";
-        } else if (startDate == null || startDate.isEmpty()) {
+        } else if (!isExtension 
+                && (startDate == null || startDate.isEmpty())) {
             return "start date is empty.";
         } else if (endDate == null || endDate.isEmpty()) {
             return "end date is empty.";
-        } else if (hostName == null || hostName.isEmpty()) {
-            return "host name is empty.";
-        } else if (portName == null || portName.isEmpty()) {
-            return "port name is empty.";
-        } else if (dbName == null || dbName.isEmpty()) {
-            return "DB/Schema name is empty.";
-        } else if (dbUserName == null || dbUserName.isEmpty()) {
-            return "DB username is empty.";
-        } else if (dbPassword == null || dbPassword.isEmpty()) {
-            return "DB password is empty.";
         } else {
-            return "succesful";
-        }
-    }
-    
-    /**
-     * Sets parameters and result String as attributes into prepared 
-     * request to be shown on view page
-     * 
-     * @param request which will be forwarded
-     * @param result to be shown user
-     * @return request prepared to forward
-     */
-    private HttpServletRequest setRequestAttributes(
-            HttpServletRequest request, String result) {
-        Map<String, String[]> parameters = request.getParameterMap();
-        
-        /*Loop to get parameter and set it as attribute*/
-        for (Map.Entry<String, String[]> entry : parameters.entrySet()) {
-            String attributeName = entry.getKey();
-            
-            /* 
-             * Get the first element from parameter values in string
-             * array. The first one cause it is known that view page
-             * sends only one value per parameter
-             */
-            String attributeValue = entry.getValue()[0]; 
-            
-            request.setAttribute(attributeName, attributeValue);
+            return ServletParameters.checkConnectionParameters(request);
         }
-        request.setAttribute("result", result);
-        return request;
-    }
-    
-    /*
-     * Forwards prepared request to view page 
-     */
-    private void forwardIt(
-            HttpServletRequest request,
-            HttpServletResponse response) 
-            throws ServletException, IOException {
-        ServletContext context = getServletContext();
-        
-        RequestDispatcher dispatcher = 
-                context.getRequestDispatcher("/index.jsp");
-        
-        dispatcher.forward(request, response);
     }
 }
\ No newline at end of file
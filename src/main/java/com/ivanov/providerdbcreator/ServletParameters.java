@@ -0,0 +1,84 @@
+package com.ivanov.providerdbcreator;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Request handling shared by generation and analytics servlets:
+ * database connection parameters check, parameters autofill of view
+ * form and forwarding to view page.
+ *
+ * @author Aleksandr Ivanov
+ */
+final class ServletParameters {
+    static final String SUCCESSFUL = "succesful";
+
+    private ServletParameters() {}
+
+    /**
+     * Checks database connection parameters by null and emptiness.
+     *
+     * @param request provides parameters
+     * @return String of validation result
+     */
+    static String checkConnectionParameters(HttpServletRequest request) {
+        String hostName = request.getParameter("hostName");
+        String portName = request.getParameter("portName");
+        String dbName = request.getParameter("dbName");
+        String dbUserName = request.getParameter("dbUserName");
+        String dbPassword = request.getParameter("dbPassword");
+
+        if (hostName == null || hostName.isEmpty()) {
+            return "host name is empty.";
+        } else if (portName == null || portName.isEmpty()) {
+            return "port name is empty.";
+        } else if (dbName == null || dbName.isEmpty()) {
+            return "DB/Schema name is empty.";
+        } else if (dbUserName == null || dbUserName.isEmpty()) {
+            return "DB username is empty.";
+        } else if (dbPassword == null || dbPassword.isEmpty()) {
+            return "DB password is empty.";
+        } else {
+            return SUCCESSFUL;
+        }
+    }
+
+    /**
+     * Sets parameters and result String as attributes into prepared
+     * request to be shown on view page. The first element of parameter
+     * values is taken because it is known that view page sends only
+     * one value per parameter.
+     *
+     * @param request which will be forwarded
+     * @param result to be shown user
+     */
+    static void setRequestAttributes(HttpServletRequest request,
+            String result) {
+        Map<String, String[]> parameters = request.getParameterMap();
+
+        for (Map.Entry<String, String[]> entry : parameters.entrySet()) {
+            request.setAttribute(entry.getKey(), entry.getValue()[0]);
+        }
+        request.setAttribute("result", result);
+    }
+
+    /**
+     * Forwards prepared request to view page.
+     *
+     * @param context of servlet which forwards request
+     * @param page view page path
+     */
+    static void forward(ServletContext context, String page,
+            HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        RequestDispatcher dispatcher = context.getRequestDispatcher(page);
+
+        dispatcher.forward(request, response);
+    }
+}
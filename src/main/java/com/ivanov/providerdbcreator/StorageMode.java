@@ -0,0 +1,20 @@
+package com.ivanov.providerdbcreator;
+
+/**
+ * Defines how users traffic history is stored in database schema.
+ * 
+ * @author Aleksandr Ivanov
+ */
+public enum StorageMode {
+    
+    /** 
+     * One TRAFFIC table row per user per minute.
+     */
+    PER_MINUTE,
+    
+    /** 
+     * One TRAFFIC_DAILY table row per user per day. Loads of the day
+     * minutes are packed to BLOB by {@link TrafficCodec}.
+     */
+    DAILY_BLOB
+}
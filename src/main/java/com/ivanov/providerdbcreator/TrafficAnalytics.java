@@ -0,0 +1,522 @@
+package com.ivanov.providerdbcreator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * In-memory columnar copy of USERS and traffic tables for capacity
+ * planning questions: the heaviest users per city, the peak minute
+ * per day and percentiles of per-minute load.
+ *
+ * Traffic is kept in primitive arrays sorted by user and minute:
+ * minutes since epoch and loads in bytes, with offsets of every user
+ * rows. Aggregations are parallel fork/join scans over these arrays
+ * and take milliseconds instead of SQL GROUP BY over TRAFFIC.
+ *
+ * Instances are immutable and are created by {@link Builder}.
+ *
+ * @author Aleksandr Ivanov
+ */
+public class TrafficAnalytics {
+    private static final long MINUTE_MILLIS = 60000L;
+
+    private static final int MINUTES_PER_DAY = 1440;
+
+    /** Rows count under which scans are not split further. */
+    private static final int SCAN_THRESHOLD = 1 << 16;
+
+    /** Minute range leaves per pool thread in peak minutes scan. */
+    private static final int LEAVES_PER_THREAD = 4;
+
+    /** The greatest array length which every JVM allocates. */
+    static final int MAX_ROWS = Integer.MAX_VALUE - 8;
+
+    private final int[] userIds;
+    private final String[] userNames;
+    private final String[] cities;
+
+    /** Rows of user i are in [userOffsets[i], userOffsets[i + 1]). */
+    private final int[] userOffsets;
+    private final int[] minutes;
+    private final int[] loads;
+    private volatile int[] sortedLoads;
+
+    private TrafficAnalytics(int[] userIds, String[] userNames,
+            String[] cities, int[] userOffsets, int[] minutes, int[] loads) {
+        this.userIds = userIds;
+        this.userNames = userNames;
+        this.cities = cities;
+        this.userOffsets = userOffsets;
+        this.minutes = minutes;
+        this.loads = loads;
+    }
+
+    public int getUsersCount() {
+        return userIds.length;
+    }
+
+    public int getRowsCount() {
+        return minutes.length;
+    }
+
+    /**
+     * Finds users with the biggest total traffic in every city.
+     *
+     * @param n users quantity to return per city
+     * @return Map of city - users ordered by total traffic descending,
+     * cities are ordered by name
+     */
+    public Map<String, List<UserLoad>> getTopUsersByCity(int n) {
+        long[] totals = new long[userIds.length];
+        Map<String, PriorityQueue<UserLoad>> heaps = new TreeMap<>();
+        Map<String, List<UserLoad>> topUsers = new LinkedHashMap<>();
+
+        ForkJoinPool.commonPool().invoke(
+                new UserTotalsAction(0, userIds.length, totals));
+
+        for (int i = 0; i < userIds.length; i++) {
+            PriorityQueue<UserLoad> heap = heaps.get(cities[i]);
+
+            if (heap == null) {
+                heap = new PriorityQueue<>(Math.min(n, userIds.length) + 1,
+                        Comparator.comparingLong(UserLoad::getLoadedBytes));
+                heaps.put(cities[i], heap);
+            }
+            heap.add(new UserLoad(userIds[i], userNames[i], cities[i],
+                    totals[i]));
+            if (heap.size() > n) {
+                heap.poll();
+            }
+        }
+
+        for (Map.Entry<String, PriorityQueue<UserLoad>> entry
+                : heaps.entrySet()) {
+            List<UserLoad> cityTop = new ArrayList<>(entry.getValue());
+
+            cityTop.sort(Collections.reverseOrder(
+                    Comparator.comparingLong(UserLoad::getLoadedBytes)));
+            topUsers.put(entry.getKey(), cityTop);
+        }
+        return topUsers;
+    }
+
+    /**
+     * Sums all users load per minute and finds the busiest minute of
+     * every day. Minutes and days without stored rows are skipped.
+     *
+     * @return natural-ordered Map of day midnight - its peak minute
+     */
+    public SortedMap<Date, PeakMinute> getPeakMinutesByDay() {
+        SortedMap<Date, PeakMinute> peaks = new TreeMap<>();
+
+        if (minutes.length == 0) {
+            return peaks;
+        }
+
+        int firstMinute = Integer.MAX_VALUE;
+        int lastMinute = Integer.MIN_VALUE;
+
+        for (int i = 0; i < userIds.length; i++) {
+            if (userOffsets[i] < userOffsets[i + 1]) {
+                firstMinute = Math.min(firstMinute, minutes[userOffsets[i]]);
+                lastMinute = Math.max(lastMinute,
+                        minutes[userOffsets[i + 1] - 1]);
+            }
+        }
+
+        int span = lastMinute - firstMinute + 1;
+        long[] minuteTotals = new long[span];
+        int[] minuteRows = new int[span];
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int leafSpan = Math.max(MINUTES_PER_DAY,
+                span / (pool.getParallelism() * LEAVES_PER_THREAD));
+
+        pool.invoke(new MinuteTotalsAction(0, span, firstMinute, leafSpan,
+                minuteTotals, minuteRows));
+
+        for (int i = 0; i < span; i++) {
+            /* minutes without rows are gaps, not zero loads */
+            if (minuteRows[i] == 0) {
+                continue;
+            }
+
+            Date minute = new Date((firstMinute + i) * MINUTE_MILLIS);
+            Date day = TrafficCodec.getDayStart(minute);
+            PeakMinute peak = peaks.get(day);
+
+            if (peak == null || peak.getLoadedBytes() < minuteTotals[i]) {
+                peaks.put(day, new PeakMinute(minute, minuteTotals[i]));
+            }
+        }
+        return peaks;
+    }
+
+    /**
+     * Returns nearest-rank percentiles of per user per minute load.
+     * Loads are sorted by parallel sort on the first call.
+     *
+     * @param percents percentiles to find, from 0 to 100
+     * @return Map of percent - load in bytes in the same order
+     */
+    public Map<Double, Long> getLoadPercentiles(double... percents) {
+        Map<Double, Long> percentiles = new LinkedHashMap<>();
+        int[] sorted = getSortedLoads();
+
+        for (double percent : percents) {
+            if (sorted.length == 0) {
+                percentiles.put(percent, 0L);
+                continue;
+            }
+
+            int rank = (int) Math.ceil(percent / 100 * sorted.length);
+            int index = Math.min(sorted.length - 1, Math.max(0, rank - 1));
+
+            percentiles.put(percent, (long) sorted[index]);
+        }
+        return percentiles;
+    }
+
+    private int[] getSortedLoads() {
+        int[] sorted = sortedLoads;
+
+        if (sorted == null) {
+            sorted = Arrays.copyOf(loads, loads.length);
+            Arrays.parallelSort(sorted);
+            sortedLoads = sorted;
+        }
+        return sorted;
+    }
+
+    /**
+     * Sums rows of users range into totals array, splitting range
+     * while it holds more than threshold rows.
+     */
+    private class UserTotalsAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int fromUser;
+        private final int toUser;
+        private final long[] totals;
+
+        UserTotalsAction(int fromUser, int toUser, long[] totals) {
+            this.fromUser = fromUser;
+            this.toUser = toUser;
+            this.totals = totals;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = userOffsets[toUser] - userOffsets[fromUser];
+
+            if (rows <= SCAN_THRESHOLD || toUser - fromUser < 2) {
+                for (int user = fromUser; user < toUser; user++) {
+                    long total = 0;
+
+                    for (int row = userOffsets[user];
+                            row < userOffsets[user + 1]; row++) {
+                        total += loads[row];
+                    }
+                    totals[user] = total;
+                }
+                return;
+            }
+
+            int middle = (fromUser + toUser) >>> 1;
+
+            invokeAll(new UserTotalsAction(fromUser, middle, totals),
+                    new UserTotalsAction(middle, toUser, totals));
+        }
+    }
+
+    /**
+     * Sums loads and counts rows of minutes range into shared arrays,
+     * splitting range while it is longer than leaf span. Leaves write
+     * disjoint parts of arrays, so nothing is allocated or merged per
+     * leaf. Every leaf finds its minutes in every user rows by binary
+     * search.
+     */
+    private class MinuteTotalsAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int fromIndex;
+        private final int toIndex;
+        private final int firstMinute;
+        private final int leafSpan;
+        private final long[] totals;
+        private final int[] rowCounts;
+
+        MinuteTotalsAction(int fromIndex, int toIndex, int firstMinute,
+                int leafSpan, long[] totals, int[] rowCounts) {
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+            this.firstMinute = firstMinute;
+            this.leafSpan = leafSpan;
+            this.totals = totals;
+            this.rowCounts = rowCounts;
+        }
+
+        @Override
+        protected void compute() {
+            if (toIndex - fromIndex <= leafSpan) {
+                int fromMinute = firstMinute + fromIndex;
+                int toMinute = firstMinute + toIndex;
+
+                for (int user = 0; user < userIds.length; user++) {
+                    int userEnd = userOffsets[user + 1];
+                    int row = findFirstRow(userOffsets[user], userEnd,
+                            fromMinute);
+
+                    for (; row < userEnd && minutes[row] < toMinute; row++) {
+                        totals[minutes[row] - firstMinute] += loads[row];
+                        rowCounts[minutes[row] - firstMinute]++;
+                    }
+                }
+                return;
+            }
+
+            int middle = (fromIndex + toIndex) >>> 1;
+
+            invokeAll(new MinuteTotalsAction(fromIndex, middle, firstMinute,
+                            leafSpan, totals, rowCounts),
+                    new MinuteTotalsAction(middle, toIndex, firstMinute,
+                            leafSpan, totals, rowCounts));
+        }
+
+        /**
+         * Returns the first row of rows range with minute not less
+         * than given one or range end.
+         */
+        private int findFirstRow(int fromRow, int toRow, int minute) {
+            int low = fromRow;
+            int high = toRow;
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+
+                if (minutes[middle] < minute) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * User with total traffic load.
+     */
+    public static class UserLoad {
+        private final int userId;
+        private final String name;
+        private final String city;
+        private final long loadedBytes;
+
+        UserLoad(int userId, String name, String city, long loadedBytes) {
+            this.userId = userId;
+            this.name = name;
+            this.city = city;
+            this.loadedBytes = loadedBytes;
+        }
+
+        public int getUserId() {
+            return userId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getCity() {
+            return city;
+        }
+
+        public long getLoadedBytes() {
+            return loadedBytes;
+        }
+    }
+
+    /**
+     * Minute with all users load summed.
+     */
+    public static class PeakMinute {
+        private final Date minute;
+        private final long loadedBytes;
+
+        PeakMinute(Date minute, long loadedBytes) {
+            this.minute = minute;
+            this.loadedBytes = loadedBytes;
+        }
+
+        public Date getMinute() {
+            return minute;
+        }
+
+        public long getLoadedBytes() {
+            return loadedBytes;
+        }
+    }
+
+    /**
+     * Collects users and traffic rows to columnar arrays. Rows are
+     * expected in user and minute order as they are read with ORDER
+     * BY, otherwise they are sorted on build.
+     */
+    public static class Builder {
+        private final Map<Integer, Integer> userIndexes = new HashMap<>();
+        private final List<Integer> userIds = new ArrayList<>();
+        private final List<String> userNames = new ArrayList<>();
+        private final List<String> cities = new ArrayList<>();
+        private int[] rowUsers = new int[1024];
+        private int[] minutes = new int[1024];
+        private int[] loads = new int[1024];
+        private int rowsCount;
+        private boolean isSorted = true;
+
+        /**
+         * Adds user, all users have to be added before their traffic.
+         */
+        public Builder addUser(int userId, String name, String city) {
+            userIndexes.put(userId, userIds.size());
+            userIds.add(userId);
+            userNames.add(name);
+            cities.add(city);
+            return this;
+        }
+
+        /**
+         * Adds one minute load of previously added user.
+         *
+         * @throws IllegalArgumentException if user is not added
+         * @throws IllegalStateException if rows don't fit in arrays
+         */
+        public Builder addTraffic(int userId, Date minute, int loadedBytes) {
+            Integer userIndex = userIndexes.get(userId);
+
+            if (userIndex == null) {
+                throw new IllegalArgumentException(
+                        "traffic of unknown user " + userId);
+            }
+            if (rowsCount == minutes.length) {
+                int capacity = getGrownCapacity(rowsCount);
+
+                rowUsers = Arrays.copyOf(rowUsers, capacity);
+                minutes = Arrays.copyOf(minutes, capacity);
+                loads = Arrays.copyOf(loads, capacity);
+            }
+
+            int epochMinute = (int) (minute.getTime() / MINUTE_MILLIS);
+
+            if (rowsCount > 0 && (rowUsers[rowsCount - 1] > userIndex
+                    || (rowUsers[rowsCount - 1] == userIndex
+                        && minutes[rowsCount - 1] >= epochMinute))) {
+                isSorted = false;
+            }
+            rowUsers[rowsCount] = userIndex;
+            minutes[rowsCount] = epochMinute;
+            loads[rowsCount] = loadedBytes;
+            rowsCount++;
+            return this;
+        }
+
+        /**
+         * Doubles capacity of full arrays without int overflow.
+         *
+         * @param capacity current arrays length
+         * @return the next arrays length, not above {@link #MAX_ROWS}
+         * @throws IllegalStateException if arrays have {@link #MAX_ROWS}
+         * length already
+         */
+        static int getGrownCapacity(int capacity) {
+            if (capacity >= MAX_ROWS) {
+                throw new IllegalStateException("traffic has more than "
+                        + MAX_ROWS + " rows, they don't fit in memory arrays");
+            }
+            return (int) Math.min(capacity * 2L, MAX_ROWS);
+        }
+
+        /**
+         * Builds analytics. Rows added in user and minute order are
+         * taken as they are, only rows added out of order are sorted.
+         */
+        public TrafficAnalytics build() {
+            int usersCount = userIds.size();
+            int[] sortedMinutes;
+            int[] sortedLoads;
+            int[] userOffsets = new int[usersCount + 1];
+
+            if (isSorted) {
+                sortedMinutes = getRows(minutes);
+                sortedLoads = getRows(loads);
+                for (int i = 0; i < rowsCount; i++) {
+                    userOffsets[rowUsers[i] + 1]++;
+                }
+            } else {
+                int[] rowOrder = getRowOrder();
+
+                sortedMinutes = new int[rowsCount];
+                sortedLoads = new int[rowsCount];
+                for (int i = 0; i < rowsCount; i++) {
+                    int row = rowOrder[i];
+
+                    sortedMinutes[i] = minutes[row];
+                    sortedLoads[i] = loads[row];
+                    userOffsets[rowUsers[row] + 1]++;
+                }
+            }
+            for (int i = 0; i < usersCount; i++) {
+                userOffsets[i + 1] += userOffsets[i];
+            }
+
+            int[] ids = new int[usersCount];
+
+            for (int i = 0; i < usersCount; i++) {
+                ids[i] = userIds.get(i);
+            }
+            return new TrafficAnalytics(ids,
+                    userNames.toArray(new String[usersCount]),
+                    cities.toArray(new String[usersCount]),
+                    userOffsets, sortedMinutes, sortedLoads);
+        }
+
+        /**
+         * Returns filled part of column, the column itself if it is
+         * full. Full column is copied on the next added row, so
+         * built analytics never sees later rows.
+         */
+        private int[] getRows(int[] column) {
+            return (rowsCount == column.length)
+                    ? column : Arrays.copyOf(column, rowsCount);
+        }
+
+        /**
+         * Returns rows indexes of unsorted rows in user and minute
+         * order.
+         */
+        private int[] getRowOrder() {
+            int[] rowOrder = new int[rowsCount];
+            Integer[] boxedOrder = new Integer[rowsCount];
+
+            for (int i = 0; i < rowsCount; i++) {
+                boxedOrder[i] = i;
+            }
+            Arrays.parallelSort(boxedOrder, Comparator
+                    .<Integer>comparingInt(row -> rowUsers[row])
+                    .thenComparingInt(row -> minutes[row]));
+            for (int i = 0; i < rowsCount; i++) {
+                rowOrder[i] = boxedOrder[i];
+            }
+            return rowOrder;
+        }
+    }
+}
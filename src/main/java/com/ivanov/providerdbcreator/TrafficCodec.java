@@ -0,0 +1,138 @@
+package com.ivanov.providerdbcreator;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Class packs traffic load of one user day to compact byte array and
+ * unpacks it back. It is used for TRAFFIC_DAILY table BLOB column.
+ *
+ * Encoded array starts with minutes count. Every minute is written
+ * after that as a pair of variable length numbers: distance in
+ * minutes from previous minute (from the first minute of segment for
+ * the first pair) and zigzag-converted difference between current and
+ * previous load in bytes. Consecutive minutes take one byte for time
+ * and up to five bytes for load, instead of whole DATETIME and INT
+ * columns with row and index overhead per minute.
+ *
+ * @author Aleksandr Ivanov
+ */
+final class TrafficCodec {
+    private static final long MINUTE_MILLIS = 60000L;
+
+    private TrafficCodec() {}
+
+    /**
+     * Encodes minutes loads relative to the first minute of segment.
+     *
+     * @param firstMinute segment start which minutes are counted from,
+     * it must not go after the first key of traffic Map
+     * @param traffic natural-ordered Map of minute - load in bytes
+     * @return encoded segment
+     */
+    static byte[] encode(Date firstMinute, SortedMap<Date, Integer> traffic) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                traffic.size() * 4 + 2);
+        long previousMinute = toMinutes(firstMinute);
+        long previousLoad = 0;
+
+        writeVarLong(out, traffic.size());
+
+        for (Map.Entry<Date, Integer> entry : traffic.entrySet()) {
+            long minute = toMinutes(entry.getKey());
+            long load = entry.getValue();
+
+            writeVarLong(out, minute - previousMinute);
+            writeVarLong(out, zigzag(load - previousLoad));
+
+            previousMinute = minute;
+            previousLoad = load;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes segment which was encoded by {@link #encode}.
+     *
+     * @param firstMinute segment start which was used for encoding
+     * @param encoded segment bytes
+     * @return natural-ordered Map of minute - load in bytes
+     * @throws IllegalArgumentException if bytes are truncated
+     */
+    static SortedMap<Date, Integer> decode(Date firstMinute, byte[] encoded) {
+        SortedMap<Date, Integer> traffic = new TreeMap<>();
+        int[] position = {0};
+        long minute = toMinutes(firstMinute);
+        long load = 0;
+        long count = readVarLong(encoded, position);
+
+        for (long i = 0; i < count; i++) {
+            minute += readVarLong(encoded, position);
+            load += unzigzag(readVarLong(encoded, position));
+
+            traffic.put(new Date(minute * MINUTE_MILLIS), (int) load);
+        }
+        return traffic;
+    }
+
+    /**
+     * Truncates time to the beginning of its day in default time
+     * zone, the same one which is used for DATETIME strings.
+     *
+     * @param date any time point
+     * @return midnight of the same day
+     */
+    static Date getDayStart(Date date) {
+        Calendar calendar = Calendar.getInstance();
+
+        calendar.setTime(date);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTime();
+    }
+
+    private static long toMinutes(Date date) {
+        return Math.floorDiv(date.getTime(), MINUTE_MILLIS);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(byte[] encoded, int[] position) {
+        long value = 0;
+        int shift = 0;
+
+        while (true) {
+            if (position[0] >= encoded.length || shift > 63) {
+                throw new IllegalArgumentException(
+                        "encoded traffic is truncated or corrupted");
+            }
+            byte current = encoded[position[0]++];
+
+            value |= (long) (current & 0x7F) << shift;
+            if ((current & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.ivanov.providerdbcreator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Streaming usage profile of one user: total bytes, active minutes,
+ * peak minute and per-minute load quantiles. It is fed minute by
+ * minute while traffic is generated, so profile needs no extra pass
+ * over traffic and no SQL over TRAFFIC table.
+ *
+ * Quantiles are taken from log-linear histogram: loads below 64 have
+ * own buckets, greater loads share buckets with 32 sub-buckets per
+ * power of two, so relative error is below 1.6%. Sketches of the same
+ * user are mergeable and can be stored as bytes and read back.
+ *
+ * @author Aleksandr Ivanov
+ */
+public class UsageSketch {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int FORMAT_VERSION = 1;
+
+    private long totalBytes;
+    private long minutesCount;
+    private long activeMinutes;
+    private Date peakMinute;
+    private int peakBytes;
+
+    /** Histogram buckets, grown up to the greatest seen bucket. */
+    private int[] counts = new int[SUB_BUCKETS * 2];
+
+    /**
+     * Adds one minute load.
+     *
+     * @param minute time point of load
+     * @param loadedBytes load in bytes, negative load counts as 0
+     */
+    public void add(Date minute, int loadedBytes) {
+        int load = Math.max(0, loadedBytes);
+        int index = getBucketIndex(load);
+
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts,
+                    Math.max(index + 1, counts.length * 2));
+        }
+        counts[index]++;
+        totalBytes += load;
+        minutesCount++;
+        if (load > 0) {
+            activeMinutes++;
+        }
+        if (peakMinute == null || load > peakBytes) {
+            peakMinute = minute;
+            peakBytes = load;
+        }
+    }
+
+    /**
+     * Adds other sketch of the same user to this one.
+     *
+     * @param other sketch to add
+     */
+    public void merge(UsageSketch other) {
+        if (other.counts.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.counts.length);
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalBytes += other.totalBytes;
+        minutesCount += other.minutesCount;
+        activeMinutes += other.activeMinutes;
+        if (other.peakMinute != null
+                && (peakMinute == null || other.peakBytes > peakBytes)) {
+            peakMinute = other.peakMinute;
+            peakBytes = other.peakBytes;
+        }
+    }
+
+    /**
+     * Returns approximate per-minute load quantile.
+     *
+     * @param quantile from 0 to 1, for example 0.95
+     * @return middle of the bucket which holds quantile, not greater
+     * than peak load; 0 for empty sketch
+     */
+    public int getQuantile(double quantile) {
+        if (minutesCount == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * minutesCount));
+        long seen = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                long middle = getBucketLowerBound(i)
+                        + (getBucketWidth(i) - 1) / 2;
+
+                return (int) Math.min(middle, peakBytes);
+            }
+        }
+        return peakBytes;
+    }
+
+    /**
+     * Returns sketch as bytes to store in database.
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            int usedBuckets = counts.length;
+
+            while (usedBuckets > 0 && counts[usedBuckets - 1] == 0) {
+                usedBuckets--;
+            }
+            out.writeByte(FORMAT_VERSION);
+            out.writeLong(totalBytes);
+            out.writeLong(minutesCount);
+            out.writeLong(activeMinutes);
+            out.writeLong(peakMinute == null ? Long.MIN_VALUE
+                    : peakMinute.getTime());
+            out.writeInt(peakBytes);
+            out.writeInt(usedBuckets);
+            for (int i = 0; i < usedBuckets; i++) {
+                out.writeInt(counts[i]);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads sketch stored by {@link #toBytes()}.
+     *
+     * @param bytes stored sketch
+     * @return restored sketch
+     * @throws IllegalArgumentException if bytes are not a sketch
+     */
+    public static UsageSketch fromBytes(byte[] bytes) {
+        UsageSketch sketch = new UsageSketch();
+
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(bytes))) {
+            if (in.readByte() != FORMAT_VERSION) {
+                throw new IllegalArgumentException(
+                        "unknown usage sketch format");
+            }
+            sketch.totalBytes = in.readLong();
+            sketch.minutesCount = in.readLong();
+            sketch.activeMinutes = in.readLong();
+
+            long peakTime = in.readLong();
+
+            sketch.peakMinute = (peakTime == Long.MIN_VALUE)
+                    ? null : new Date(peakTime);
+            sketch.peakBytes = in.readInt();
+
+            int usedBuckets = in.readInt();
+
+            sketch.counts = new int[Math.max(usedBuckets, SUB_BUCKETS * 2)];
+            for (int i = 0; i < usedBuckets; i++) {
+                sketch.counts[i] = in.readInt();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(
+                    "usage sketch is truncated", e);
+        }
+        return sketch;
+    }
+
+    /**
+     * Loads below 2 * SUB_BUCKETS are own bucket indexes. Greater
+     * loads are split by highest bit and next SUB_BUCKET_BITS bits.
+     */
+    private static int getBucketIndex(int load) {
+        if (load < SUB_BUCKETS * 2) {
+            return load;
+        }
+
+        int highestBit = 31 - Integer.numberOfLeadingZeros(load);
+        int shift = highestBit - SUB_BUCKET_BITS;
+
+        return (shift + 1) * SUB_BUCKETS + (load >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long getBucketLowerBound(int index) {
+        if (index < SUB_BUCKETS * 2) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKETS - 1;
+
+        return (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    private static long getBucketWidth(int index) {
+        if (index < SUB_BUCKETS * 2) {
+            return 1;
+        }
+        return 1L << (index / SUB_BUCKETS - 1);
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getMinutesCount() {
+        return minutesCount;
+    }
+
+    public long getActiveMinutes() {
+        return activeMinutes;
+    }
+
+    public Date getPeakMinute() {
+        return peakMinute;
+    }
+
+    public int getPeakBytes() {
+        return peakBytes;
+    }
+}
@@ -2,6 +2,7 @@ package com.ivanov.providerdbcreator;
 
 import java.util.Date;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
 
@@ -28,33 +29,87 @@ public class User {
      */
     private Map<Date, Integer> traffic;
     
+    /** 
+     * Source of traffic loads. It is seeded for reproducible users,
+     * so the same seed gives the same loads on any worker.
+     */
+    private final Random trafficRandom;
+    
+    /** 
+     * Usage profile of all traffic generated for this user. It grows
+     * with every loadTraffic() call, so in window-major order it 
+     * covers all windows loaded so far.
+     */
+    private final UsageSketch usage = new UsageSketch();
+    
     /** 
      * Constructs a User with randomly appropriated values. 
      * {@link org.fluttercode.datafactory.impl.DataFactory} is used
      * for user information generation.
      */
     public User() {
-        DataFactory df = new DataFactory();
-        
         /* 
          * Seed for DataFactory (and randomize after that) is 
          * required. Otherwise generation results become the same 
          * with previous program start results.
          */
-        int seedForDataFactory = (int) (Math.random() * 1_000_000);
-        
-        df.randomize(seedForDataFactory);
+        this((int) (Math.random() * 1_000_000), new Random());
+    }
+    
+    /** 
+     * Constructs a reproducible User: the same seed gives the same
+     * user information and traffic loads.
+     * 
+     * @param seed defines user information and traffic loads
+     */
+    public User(long seed) {
+        this((int) (seed ^ (seed >>> 32)), new Random(seed));
+    }
+    
+    /** 
+     * Constructs a User which is already stored in schema, for its
+     * traffic extension.
+     * 
+     * @param firstName stored first name
+     * @param lastName stored last name
+     * @param city stored city
+     * @param address stored address
+     * @param trafficSeed defines traffic loads of extension
+     */
+    User(String firstName, String lastName, String city, String address,
+            long trafficSeed) {
+        this.trafficRandom = new Random(trafficSeed);
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.city = city;
+        this.address = address;
+    }
+    
+    /**
+     * DataFactory keeps its Random in static field, so randomize() and
+     * the following values are taken under DataFactory class lock. 
+     * Otherwise users generated by parallel threads take values of 
+     * each other seed.
+     */
+    private User(int seedForDataFactory, Random trafficRandom) {
+        this.trafficRandom = trafficRandom;
         
-        this.firstName = df.getFirstName();
-        this.lastName = df.getLastName();
-        this.city = df.getCity();
-        this.address = df.getAddress();
+        synchronized (DataFactory.class) {
+            DataFactory df = new DataFactory();
+            
+            df.randomize(seedForDataFactory);
+            this.firstName = df.getFirstName();
+            this.lastName = df.getLastName();
+            this.city = df.getCity();
+            this.address = df.getAddress();
+        }
     }
 
     /**
      * Returns a Map of traffic load history by minutes. Traffic
-     * load in bytes is generated randomly with java.lang.Math.random()
-     * method.
+     * load in bytes is generated randomly with user own 
+     * java.util.Random. Every generated load is added to user usage
+     * sketch on the way.
      * 
      * @param timePoints set of minutes which defines time points to
      * sum traffic load
@@ -64,9 +119,10 @@ public class User {
         traffic = new TreeMap<>();
         
         for (Date date : timePoints) {
-            int currentTraffic = (int) (Math.random() * 100_000_000);
+            int currentTraffic = trafficRandom.nextInt(100_000_000);
             
             traffic.put(date, currentTraffic);
+            usage.add(date, currentTraffic);
         }
         
         return traffic;
@@ -129,6 +185,10 @@ public class User {
         return traffic;
     }
 
+    public UsageSketch getUsage() {
+        return usage;
+    }
+
     public String getFirstName() {
         return firstName;
     }
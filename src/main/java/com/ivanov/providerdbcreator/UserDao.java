@@ -1,15 +1,28 @@
 package com.ivanov.providerdbcreator;
 
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntToLongFunction;
 
 /**
  * This class describes SQL conversation side of current program.
@@ -24,6 +37,33 @@ import java.util.Map;
  * precision (minutes), load in bytes, user IDs as the foreign key 
  * and traffic record ID as the primary key. 
  * 
+ * In {@link StorageMode#DAILY_BLOB} mode TRAFFIC_DAILY table is used
+ * instead of TRAFFIC. It keeps one row per user per day: the day, the
+ * first and the last stored minutes and loads of all day minutes 
+ * encoded by {@link TrafficCodec} to BLOB.
+ * 
+ * Traffic rows are unique by user and minute (by user and day for 
+ * TRAFFIC_DAILY) and are written as upserts. New minutes of already 
+ * stored day are merged into its TRAFFIC_DAILY row. Unique keys are
+ * added to tables created by previous versions. Transaction which 
+ * failed by deadlock or lock wait timeout is repeated by
+ * {@link SQLRetryPolicy} without duplicating already stored minutes.
+ * 
+ * USER_STATS table keeps per-user usage profile computed during 
+ * generation by {@link UsageSketch}: total bytes, minutes, active
+ * minutes, peak minute, p50/p95/p99 per-minute load and the sketch
+ * itself to merge later generations. It is written in the same 
+ * transaction as traffic. Stored profile is continued by jobs which
+ * store other minutes of the same user and replaced by jobs which 
+ * regenerate all its minutes, see {@link #setRegeneratedRange}. 
+ * Users whose traffic is stored without profile, for example by 
+ * versions before USER_STATS table, get no profile later: it can't be
+ * computed without SQL over their stored traffic.
+ * 
+ * MySQL connection rewrites batched upserts to multi-row statements
+ * (rewriteBatchedStatements), so traffic of every user and window 
+ * goes to server in a few round trips.
+ * 
  * It has methods to create new users table new traffic table, new 
  * user record, new traffic record and to find user ID by user 
  * registration details.
@@ -34,11 +74,43 @@ import java.util.Map;
  */
 public class UserDao {
     private static final String DB_DRIVER = "com.mysql.jdbc.Driver";
-    private static final DateFormat sqlDateFormat =
-            new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    
+    /**
+     * TRAFFIC rows sent by one batch, one day of minutes. Job 
+     * cancellation is checked between batches.
+     */
+    private static final int BATCH_ROWS = 1440;
     private final String dbLink;
     private final String dbUserName;
     private final String dbPassword;
+    private final StorageMode storageMode;
+    
+    /**
+     * IDs of users whose rows are committed by this instance. Users
+     * are stored once per time window in window-major generation, so
+     * it saves USERS table search for every next window.
+     */
+    private final Map<User, Integer> committedUserIds = new HashMap<>();
+    
+    /**
+     * Profiles of committed users stored before this instance, their
+     * new usage is merged to them. Null profile means that stored 
+     * profile can't be continued and user gets no USER_STATS row.
+     */
+    private final Map<User, UsageSketch> storedUsages = new HashMap<>();
+    
+    /**
+     * Range of current job, stored traffic of its users in this range
+     * is generated again.
+     */
+    private Date regeneratedFrom;
+    private Date regeneratedTo;
+    
+    /**
+     * Cancels current job when it returns true, null if job can't be
+     * cancelled.
+     */
+    private BooleanSupplier cancellationCheck;
     
     /**
      * Determines necessity to check USERS table existence in schema.
@@ -50,6 +122,18 @@ public class UserDao {
      * schema 
      */
     private boolean isNotCreatedTrafficTable = true;
+    
+    /**
+     * Determines necessity to check TRAFFIC_DAILY table existence in 
+     * schema 
+     */
+    private boolean isNotCreatedDailyTrafficTable = true;
+    
+    /**
+     * Determines necessity to check USER_STATS table existence in 
+     * schema 
+     */
+    private boolean isNotCreatedUserStatsTable = true;
 
     /**
      * Creates new instance of UserDao and defines SQL connection
@@ -63,51 +147,203 @@ public class UserDao {
      */
     public UserDao(String hostName, String portName,
                    String dbName, String dbUserName, String dbPassword) {
-        StringBuilder linkBuilder = new StringBuilder();
-        
-        linkBuilder.append("jdbc:mysql://");
-        linkBuilder.append(hostName);
-        linkBuilder.append(":");
-        linkBuilder.append(portName);
-        linkBuilder.append("/");
-        linkBuilder.append(dbName);
-        
-        this.dbLink = linkBuilder.toString();
+        this(hostName, portName, dbName, dbUserName, dbPassword,
+                StorageMode.PER_MINUTE);
+    }
+    
+    /**
+     * Creates new instance of UserDao which stores traffic in given
+     * storage mode.
+     * 
+     * @param hostName host name to connect
+     * @param portName port of host to connect
+     * @param dbName schema name to connect
+     * @param dbUserName username to login
+     * @param dbPassword password to login
+     * @param storageMode defines traffic table and its rows layout
+     */
+    public UserDao(String hostName, String portName,
+                   String dbName, String dbUserName, String dbPassword,
+                   StorageMode storageMode) {
+        this(getMySQLLink(hostName, portName, dbName), 
+                dbUserName, dbPassword, storageMode);
+    }
+    
+    /**
+     * Creates new instance of UserDao connected by ready JDBC URL. It
+     * lets to run the same SQL against MySQL compatible embedded 
+     * databases in performance checks.
+     * 
+     * @param dbLink JDBC URL to connect
+     * @param dbUserName username to login
+     * @param dbPassword password to login
+     * @param storageMode defines traffic table and its rows layout
+     */
+    UserDao(String dbLink, String dbUserName, String dbPassword,
+            StorageMode storageMode) {
+        this.dbLink = dbLink;
         this.dbUserName = dbUserName;
         this.dbPassword = dbPassword;
+        this.storageMode = storageMode;
     }
     
     /**
-     * Determines steps to do for current user traffic storing.
+     * Sets time range which current job generates again for stored 
+     * users. Stored USER_STATS profile is replaced if it covers only
+     * this range, continued if it covers only other minutes and 
+     * removed if it covers both. Without range stored profiles are
+     * continued.
+     * 
+     * @param from the first minute of range
+     * @param to the minute after range
+     */
+    void setRegeneratedRange(Date from, Date to) {
+        this.regeneratedFrom = from;
+        this.regeneratedTo = to;
+    }
+    
+    /**
+     * Sets check which is asked between traffic batches. Transaction
+     * of cancelled job is rolled back and CancellationException is 
+     * thrown.
+     * 
+     * @param cancellationCheck check or null
+     */
+    void setCancellationCheck(BooleanSupplier cancellationCheck) {
+        this.cancellationCheck = cancellationCheck;
+    }
+    
+    /**
+     * Stores current user traffic in one transaction. Transaction is
+     * repeated after transient conflicts with other jobs up to 
+     * {@link SQLRetryPolicy#MAX_ATTEMPTS} times.
      * 
      * @param user defines whose traffic to store
-     * @throws SQLException is re-thrown from underlying methods. 
-     * Handling is implied to do in Servlet to show exception to 
-     * program user.
+     * @throws SQLException is re-thrown from underlying methods if it
+     * is not transient or attempts are over. Handling is implied to do
+     * in Servlet to show exception to program user.
      * @throws ClassNotFoundException re-thrown from getConnection()
      * Handling is implied to do in Servlet to show exception to 
      * program user
+     * @throws CancellationException if cancellation check returns true
      */
     void storeUserTraffic(User user) 
             throws SQLException, ClassNotFoundException {
+        storeUsersTraffic(Collections.singletonList(user));
+    }
+
+    /**
+     * Stores current traffic of all received users on one connection
+     * in one transaction, so time window of window-major order costs
+     * one commit. Transaction is repeated after transient conflicts 
+     * with other jobs up to {@link SQLRetryPolicy#MAX_ATTEMPTS} times.
+     * 
+     * @param users whose traffic to store
+     * @throws SQLException is re-thrown from underlying methods if it
+     * is not transient or attempts are over. Handling is implied to do
+     * in Servlet to show exception to program user.
+     * @throws ClassNotFoundException re-thrown from getConnection()
+     * Handling is implied to do in Servlet to show exception to 
+     * program user
+     * @throws CancellationException if cancellation check returns true
+     */
+    void storeUsersTraffic(List<User> users) 
+            throws SQLException, ClassNotFoundException {
+        if (users.isEmpty()) {
+            return;
+        }
+        createMissingTables();
+        SQLRetryPolicy.runWithRetries(
+                () -> storeUsersTrafficInTransaction(users));
+    }
+
+    /**
+     * Creates missing tables of current storage mode on separate 
+     * connection before traffic transaction. MySQL commits implicitly 
+     * on CREATE TABLE and ALTER TABLE, so they are not mixed with 
+     * transaction statements. Tables are checked once per instance, no
+     * connection is opened when all of them are checked already.
+     * 
+     * @throws SQLException handling is implied to do in Servlet 
+     * to show exception to program user.
+     * @throws ClassNotFoundException re-thrown from getConnection()
+     */
+    private void createMissingTables() 
+            throws SQLException, ClassNotFoundException {
+        boolean isNotCreatedModeTable =
+                (storageMode == StorageMode.DAILY_BLOB)
+                ? isNotCreatedDailyTrafficTable()
+                : isNotCreatedTrafficTable();
+
+        if (!isNotCreatedUsersTable() && !isNotCreatedModeTable
+                && !isNotCreatedUserStatsTable()) {
+            return;
+        }
+
+        try (Connection connection = getConnection()) {
+            
+            if (isNotCreatedUsersTable()) {
+                createUsersTable(connection);
+            }
+            if (storageMode == StorageMode.DAILY_BLOB) {
+                if (isNotCreatedDailyTrafficTable()) {
+                    createDailyTrafficTable(connection);
+                }
+            } else if (isNotCreatedTrafficTable()) {
+                createTrafficTable(connection);
+            }
+            if (isNotCreatedUserStatsTable()) {
+                createUserStatsTable(connection);
+            }
+        }
+    }
+
+    /**
+     * Determines steps to do for current traffic storing of users.
+     * Committed users IDs and stored usages are remembered only after
+     * commit, so retried transaction reads them again.
+     * 
+     * @param users whose traffic to store
+     * @throws SQLException is re-thrown from underlying methods
+     * after rollback.
+     * @throws ClassNotFoundException re-thrown from getConnection()
+     */
+    private void storeUsersTrafficInTransaction(List<User> users) 
+            throws SQLException, ClassNotFoundException {
+        Map<User, Integer> userIds = new HashMap<>();
+        Map<User, UsageSketch> usages = new HashMap<>();
         Connection connection = getConnection();
         try {
             connection.setTransactionIsolation(
                     Connection.TRANSACTION_SERIALIZABLE);
             connection.setAutoCommit(false);
 
-            if (isNotCreatedUsersTable()) {
-                createUsersTable(connection);
-            }
+            for (User user : users) {
+                int userId = getUserId(connection, user);
+                UsageSketch storedUsage = committedUserIds.containsKey(user)
+                        ? storedUsages.get(user)
+                        : readStoredUsage(connection, userId);
 
-            if (isNotCreatedTrafficTable()) {
-                createTrafficTable(connection);
+                if (storageMode == StorageMode.DAILY_BLOB) {
+                    insertUserDailyTraffic(connection, userId, user);
+                } else {
+                    insertUserTraffic(connection, userId, user);
+                }
+                if (storedUsage != null) {
+                    UsageSketch usage = new UsageSketch();
+                    
+                    usage.merge(storedUsage);
+                    usage.merge(user.getUsage());
+                    upsertUserStats(connection, userId, usage);
+                }
+                userIds.put(user, userId);
+                usages.put(user, storedUsage);
             }
-
-            insertUserTraffic(connection, user);
             connection.commit();
-        } catch (SQLException e) {
-            connection.rollback();
+            committedUserIds.putAll(userIds);
+            storedUsages.putAll(usages);
+        } catch (SQLException | RuntimeException e) {
+            rollback(connection, e);
             throw e;
         } finally {
             connection.close();
@@ -115,46 +351,562 @@ public class UserDao {
     }
 
     /**
-     * Store users traffic Map through iteration entries and inserting
-     * by prepare statement.
+     * Rolls back failed transaction. Rollback failure is attached to
+     * transaction failure instead of replacing it, so retry policy 
+     * still sees the original conflict.
+     * 
+     * @param connection of failed transaction
+     * @param failure exception which failed the transaction
+     */
+    private void rollback(Connection connection, Exception failure) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Finds profile which new usage of user is merged to before the 
+     * first storing of user by this instance. Stored traffic is split
+     * by regenerated range: profile of traffic out of range is read
+     * from USER_STATS, traffic in range is generated again and its 
+     * profile is dropped. If stored traffic is both in and out of
+     * range, the stored profile can't be split, so its row is deleted.
+     * Traffic out of range without profile was stored before USER_STATS
+     * table existed or its profile was deleted, so user gets no 
+     * profile instead of the profile of new minutes only.
      * 
      * @param connection for SQL manipulations usage
-     * @param user defines whose traffic to store
+     * @param userId USERS table ID of user
+     * @return profile to continue, empty profile for new user or null
+     * if user can't have profile
      * @throws SQLException handling is implied to do in Servlet 
      * to show exception to program user.
      */
-    private void insertUserTraffic(Connection connection, User user) 
+    private UsageSketch readStoredUsage(Connection connection, int userId)
+            throws SQLException {
+        StringBuilder queryBuilder = new StringBuilder();
+        
+        if (regeneratedFrom == null) {
+            queryBuilder.append("SELECT 0, COUNT(*) ");
+        } else if (storageMode == StorageMode.DAILY_BLOB) {
+            queryBuilder.append("SELECT SUM(CASE WHEN FIRST_MINUTE < ? ");
+            queryBuilder.append("AND LAST_MINUTE >= ? THEN 1 ELSE 0 END), ");
+            queryBuilder.append("SUM(CASE WHEN FIRST_MINUTE < ? ");
+            queryBuilder.append("OR LAST_MINUTE >= ? THEN 1 ELSE 0 END) ");
+        } else {
+            queryBuilder.append("SELECT SUM(CASE WHEN MINUTE >= ? ");
+            queryBuilder.append("AND MINUTE < ? THEN 1 ELSE 0 END), ");
+            queryBuilder.append("SUM(CASE WHEN MINUTE < ? ");
+            queryBuilder.append("OR MINUTE >= ? THEN 1 ELSE 0 END) ");
+        }
+        queryBuilder.append((storageMode == StorageMode.DAILY_BLOB)
+                ? "FROM TRAFFIC_DAILY " : "FROM TRAFFIC ");
+        queryBuilder.append("WHERE USER_ID = ?;");
+        
+        String query = queryBuilder.toString();
+        long inRange;
+        long outOfRange;
+        
+        try (PreparedStatement prepStmnt = connection.prepareStatement(query)) {
+            int index = 1;
+            
+            if (regeneratedFrom != null) {
+                Timestamp from = getSQLTime(regeneratedFrom);
+                Timestamp to = getSQLTime(regeneratedTo);
+                
+                if (storageMode == StorageMode.DAILY_BLOB) {
+                    prepStmnt.setTimestamp(index++, to);
+                    prepStmnt.setTimestamp(index++, from);
+                } else {
+                    prepStmnt.setTimestamp(index++, from);
+                    prepStmnt.setTimestamp(index++, to);
+                }
+                prepStmnt.setTimestamp(index++, from);
+                prepStmnt.setTimestamp(index++, to);
+            }
+            prepStmnt.setInt(index, userId);
+            
+            try (ResultSet rs = prepStmnt.executeQuery()) {
+                rs.next();
+                inRange = rs.getLong(1);
+                outOfRange = rs.getLong(2);
+            }
+        }
+        
+        if (outOfRange == 0) {
+            return new UsageSketch();
+        }
+        if (inRange > 0) {
+            deleteUserStats(connection, userId);
+            return null;
+        }
+        
+        String sketchQuery = "SELECT SKETCH FROM USER_STATS "
+                + "WHERE USER_ID = ? FOR UPDATE;";
+        
+        try (PreparedStatement prepStmnt = 
+                connection.prepareStatement(sketchQuery)) {
+            
+            prepStmnt.setInt(1, userId);
+            
+            try (ResultSet rs = prepStmnt.executeQuery()) {
+                return rs.next() ? UsageSketch.fromBytes(rs.getBytes(1))
+                        : null;
+            }
+        }
+    }
+
+    private void deleteUserStats(Connection connection, int userId)
             throws SQLException {
-        int userId = getUserId(connection, user);
+        String query = "DELETE FROM USER_STATS WHERE USER_ID = ?;";
+        
+        try (PreparedStatement prepStmnt = connection.prepareStatement(query)) {
+            
+            prepStmnt.setInt(1, userId);
+            prepStmnt.execute();
+        }
+    }
+
+    /**
+     * Store users traffic Map through iteration entries and batched
+     * upserting by prepare statement. Batch is sent for every day of
+     * minutes and job cancellation is checked after it.
+     * 
+     * @param connection for SQL manipulations usage
+     * @param userId USERS table ID of user
+     * @param user defines whose traffic to store
+     * @throws SQLException handling is implied to do in Servlet 
+     * to show exception to program user.
+     * @throws CancellationException if cancellation check returns true
+     */
+    private void insertUserTraffic(Connection connection, int userId,
+            User user) throws SQLException {
         StringBuilder queryBuilder = new StringBuilder();
         
         queryBuilder.append("INSERT INTO TRAFFIC(MINUTE, ");
         queryBuilder.append("LOADED_BYTES, USER_ID) ");
-        queryBuilder.append("VALUES( ?, ?, ?);");
+        queryBuilder.append("VALUES( ?, ?, ?) ");
+        queryBuilder.append("ON DUPLICATE KEY UPDATE ");
+        queryBuilder.append("LOADED_BYTES = VALUES(LOADED_BYTES);");
         
         String query = queryBuilder.toString();
         
         try (PreparedStatement prepStmnt = connection.prepareStatement(query)) {
             
             Map<Date, Integer> userTraffic = user.getTraffic();
+            int batchRows = 0;
             
             for (Map.Entry<Date, Integer> entry : userTraffic.entrySet()) {
                 Date minute = entry.getKey();
                 Integer traffic = entry.getValue();
                 
-                String minuteString = getSQLFormatTime(minute);
-                
-                prepStmnt.setString(1, minuteString);
+                prepStmnt.setTimestamp(1, getSQLTime(minute));
                 prepStmnt.setInt(2, traffic);
                 prepStmnt.setInt(3, userId);
-                prepStmnt.execute();
+                prepStmnt.addBatch();
+                if (++batchRows == BATCH_ROWS) {
+                    prepStmnt.executeBatch();
+                    checkCancellation();
+                    batchRows = 0;
+                }
+            }
+            prepStmnt.executeBatch();
+        } 
+    }
+
+    /**
+     * Throws CancellationException if cancellation check says that
+     * current job is cancelled.
+     */
+    private void checkCancellation() {
+        if (cancellationCheck != null && cancellationCheck.getAsBoolean()) {
+            throw new CancellationException("job is cancelled");
+        }
+    }
+
+    /**
+     * Store users traffic Map as one TRAFFIC_DAILY row per day. Map
+     * entries are split to days. Stored rows of the same days are 
+     * read under lock and their minutes are merged with new ones, so
+     * every day keeps one row encoded by {@link TrafficCodec} relative
+     * to its first stored minute.
+     * 
+     * @param connection for SQL manipulations usage
+     * @param userId USERS table ID of user
+     * @param user defines whose traffic to store
+     * @throws SQLException handling is implied to do in Servlet 
+     * to show exception to program user.
+     */
+    private void insertUserDailyTraffic(Connection connection, int userId,
+            User user) throws SQLException {
+        SortedMap<Date, SortedMap<Date, Integer>> daysTraffic = new TreeMap<>();
+        
+        for (Map.Entry<Date, Integer> entry : user.getTraffic().entrySet()) {
+            Date day = TrafficCodec.getDayStart(entry.getKey());
+            SortedMap<Date, Integer> dayTraffic = daysTraffic.get(day);
+            
+            if (dayTraffic == null) {
+                dayTraffic = new TreeMap<>();
+                daysTraffic.put(day, dayTraffic);
+            }
+            dayTraffic.put(entry.getKey(), entry.getValue());
+        }
+        
+        if (daysTraffic.isEmpty()) {
+            return;
+        }
+        mergeStoredDays(connection, userId, daysTraffic);
+        
+        StringBuilder queryBuilder = new StringBuilder();
+        
+        queryBuilder.append("INSERT INTO TRAFFIC_DAILY(DAY, FIRST_MINUTE, ");
+        queryBuilder.append("LAST_MINUTE, ENCODED_LOADS, USER_ID) ");
+        queryBuilder.append("VALUES( ?, ?, ?, ?, ?) ");
+        queryBuilder.append("ON DUPLICATE KEY UPDATE ");
+        queryBuilder.append("FIRST_MINUTE = VALUES(FIRST_MINUTE), ");
+        queryBuilder.append("LAST_MINUTE = VALUES(LAST_MINUTE), ");
+        queryBuilder.append("ENCODED_LOADS = VALUES(ENCODED_LOADS);");
+        
+        String query = queryBuilder.toString();
+        
+        try (PreparedStatement prepStmnt = connection.prepareStatement(query)) {
+            
+            for (Map.Entry<Date, SortedMap<Date, Integer>> entry 
+                    : daysTraffic.entrySet()) {
+                insertDay(prepStmnt, userId, entry.getKey(), entry.getValue());
             }
+            prepStmnt.executeBatch();
         } 
     }
 
+    /**
+     * Reads stored TRAFFIC_DAILY rows of user for given days by one 
+     * locking query and adds their minutes to days traffic. New loads
+     * replace stored loads of the same minutes.
+     * 
+     * @param connection for SQL manipulations usage
+     * @param userId USERS table ID of user
+     * @param daysTraffic non-empty Map with entries: day midnight - 
+     * new minutes of the day
+     * @throws SQLException handling is implied to do in Servlet 
+     * to show exception to program user.
+     */
+    private void mergeStoredDays(Connection connection, int userId,
+            SortedMap<Date, SortedMap<Date, Integer>> daysTraffic) 
+            throws SQLException {
+        StringBuilder queryBuilder = new StringBuilder();
+        
+        queryBuilder.append("SELECT DAY, FIRST_MINUTE, ENCODED_LOADS ");
+        queryBuilder.append("FROM TRAFFIC_DAILY WHERE USER_ID = ? ");
+        queryBuilder.append("AND DAY >= ? AND DAY <= ? FOR UPDATE;");
+        
+        String query = queryBuilder.toString();
+        
+        try (PreparedStatement prepStmnt = connection.prepareStatement(query)) {
+            
+            prepStmnt.setInt(1, userId);
+            prepStmnt.setDate(2, getSQLDay(daysTraffic.firstKey()));
+            prepStmnt.setDate(3, getSQLDay(daysTraffic.lastKey()));
+            
+            try (ResultSet rs = prepStmnt.executeQuery()) {
+                while (rs.next()) {
+                    Date day = TrafficCodec.getDayStart(rs.getDate(1));
+                    SortedMap<Date, Integer> dayTraffic = daysTraffic.get(day);
+                    
+                    if (dayTraffic == null) {
+                        continue;
+                    }
+                    
+                    Date firstMinute = new Date(rs.getTimestamp(2).getTime());
+                    SortedMap<Date, Integer> storedTraffic = 
+                            TrafficCodec.decode(firstMinute, rs.getBytes(3));
+                    
+                    storedTraffic.putAll(dayTraffic);
+                    daysTraffic.put(day, storedTraffic);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds prepared TRAFFIC_DAILY upsert for one day to batch.
+     * 
+     * @param prepStmnt prepared TRAFFIC_DAILY upsert statement
+     * @param userId whose traffic to store
+     * @param day midnight of stored day
+     * @param dayTraffic non-empty minutes of the day
+     * @throws SQLException handling is implied to do in Servlet 
+     * to show exception to program user.
+     */
+    private void insertDay(PreparedStatement prepStmnt, int userId, Date day,
+            SortedMap<Date, Integer> dayTraffic) throws SQLException {
+        Date firstMinute = dayTraffic.firstKey();
+        Date lastMinute = dayTraffic.lastKey();
+        
+        prepStmnt.setDate(1, getSQLDay(day));
+        prepStmnt.setTimestamp(2, getSQLTime(firstMinute));
+        prepStmnt.setTimestamp(3, getSQLTime(lastMinute));
+        prepStmnt.setBytes(4, TrafficCodec.encode(firstMinute, dayTraffic));
+        prepStmnt.setInt(5, userId);
+        prepStmnt.addBatch();
+    }
+
+    /**
+     * Stores user usage profile. Profile covers all traffic generated
+     * for user so far, so existing row is replaced.
+     * 
+     * @param connection for SQL manipulations usage
+     * @param userId USERS table ID of user
+     * @param usage user usage sketch
+     * @throws SQLException handling is implied to do in Servlet 
+     * to show exception to program user.
+     */
+    private void upsertUserStats(Connection connection, int userId,
+            UsageSketch usage) throws SQLException {
+        StringBuilder queryBuilder = new StringBuilder();
+        
+        queryBuilder.append("INSERT INTO USER_STATS(USER_ID, TOTAL_BYTES, ");
+        queryBuilder.append("MINUTES, ACTIVE_MINUTES, PEAK_MINUTE, ");
+        queryBuilder.append("PEAK_BYTES, P50_BYTES, P95_BYTES, P99_BYTES, ");
+        queryBuilder.append("SKETCH) VALUES( ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ");
+        queryBuilder.append("ON DUPLICATE KEY UPDATE ");
+        queryBuilder.append("TOTAL_BYTES = VALUES(TOTAL_BYTES), ");
+        queryBuilder.append("MINUTES = VALUES(MINUTES), ");
+        queryBuilder.append("ACTIVE_MINUTES = VALUES(ACTIVE_MINUTES), ");
+        queryBuilder.append("PEAK_MINUTE = VALUES(PEAK_MINUTE), ");
+        queryBuilder.append("PEAK_BYTES = VALUES(PEAK_BYTES), ");
+        queryBuilder.append("P50_BYTES = VALUES(P50_BYTES), ");
+        queryBuilder.append("P95_BYTES = VALUES(P95_BYTES), ");
+        queryBuilder.append("P99_BYTES = VALUES(P99_BYTES), ");
+        queryBuilder.append("SKETCH = VALUES(SKETCH);");
+        
+        String query = queryBuilder.toString();
+        
+        try (PreparedStatement prepStmnt = connection.prepareStatement(query)) {
+            
+            prepStmnt.setInt(1, userId);
+            prepStmnt.setLong(2, usage.getTotalBytes());
+            prepStmnt.setLong(3, usage.getMinutesCount());
+            prepStmnt.setLong(4, usage.getActiveMinutes());
+            if (usage.getPeakMinute() == null) {
+                prepStmnt.setNull(5, Types.TIMESTAMP);
+            } else {
+                prepStmnt.setTimestamp(5, getSQLTime(usage.getPeakMinute()));
+            }
+            prepStmnt.setInt(6, usage.getPeakBytes());
+            prepStmnt.setInt(7, usage.getQuantile(0.50));
+            prepStmnt.setInt(8, usage.getQuantile(0.95));
+            prepStmnt.setInt(9, usage.getQuantile(0.99));
+            prepStmnt.setBytes(10, usage.toBytes());
+            prepStmnt.execute();
+        }
+    }
+
+    /**
+     * Reads stored traffic of user between two minutes regardless of
+     * storage mode. TRAFFIC_DAILY rows are decoded by 
+     * {@link TrafficCodec}.
+     * 
+     * @param userId whose traffic to read
+     * @param from inclusive start minute
+     * @param to exclusive end minute
+     * @return natural-ordered Map with entries: minute - traffic load
+     * bytes
+     * @throws SQLException handling is implied to do in Servlet 
+     * to show exception to program user.
+     * @throws ClassNotFoundException re-thrown from getConnection()
+     */
+    public SortedMap<Date, Integer> readUserTraffic(int userId,
+            Date from, Date to) throws SQLException, ClassNotFoundException {
+        SortedMap<Date, Integer> traffic = new TreeMap<>();
+        StringBuilder queryBuilder = new StringBuilder();
+        
+        if (storageMode == StorageMode.DAILY_BLOB) {
+            queryBuilder.append("SELECT FIRST_MINUTE, ENCODED_LOADS ");
+            queryBuilder.append("FROM TRAFFIC_DAILY WHERE USER_ID = ? ");
+            queryBuilder.append("AND LAST_MINUTE >= ? AND FIRST_MINUTE < ?;");
+        } else {
+            queryBuilder.append("SELECT MINUTE, LOADED_BYTES ");
+            queryBuilder.append("FROM TRAFFIC WHERE USER_ID = ? ");
+            queryBuilder.append("AND MINUTE >= ? AND MINUTE < ?;");
+        }
+        
+        String query = queryBuilder.toString();
+        
+        try (Connection connection = getConnection();
+             PreparedStatement prepStmnt = connection.prepareStatement(query)) {
+            
+            prepStmnt.setInt(1, userId);
+            prepStmnt.setTimestamp(2, getSQLTime(from));
+            prepStmnt.setTimestamp(3, getSQLTime(to));
+            
+            try (ResultSet rs = prepStmnt.executeQuery()) {
+                while (rs.next()) {
+                    Date minute = new Date(rs.getTimestamp(1).getTime());
+                    
+                    if (storageMode == StorageMode.DAILY_BLOB) {
+                        traffic.putAll(TrafficCodec.decode(minute,
+                                rs.getBytes(2)).subMap(from, to));
+                    } else {
+                        traffic.put(minute, rs.getInt(2));
+                    }
+                }
+            }
+        }
+        return traffic;
+    }
+
+    /**
+     * Reads page of users which have stored traffic with their last 
+     * stored minute by one grouped query. Missing tables of current
+     * storage mode are created first, so empty schema or schema of 
+     * other storage mode gives no users. New usage of users is merged
+     * to their stored usage sketches, so usage profile keeps covering 
+     * the whole traffic after extension. Users stored without profile,
+     * by versions before USER_STATS table, stay without profile: it 
+     * would cover the new minutes only. Users IDs and sketches are 
+     * remembered to store their new traffic without USERS table search
+     * till {@link #forgetCommittedUsers()}.
+     * 
+     * @param trafficSeeds gives seed of extension traffic by USER_ID
+     * @param afterUserId USERS table ID after which page starts
+     * @param pageSize the greatest users quantity to read
+     * @return users in USER_ID order
+     * @throws SQLException handling is implied to do in Servlet 
+     * to show exception to program user.
+     * @throws ClassNotFoundException re-thrown from getConnection()
+     */
+    List<StoredUser> readStoredUsers(IntToLongFunction trafficSeeds,
+            int afterUserId, int pageSize) 
+            throws SQLException, ClassNotFoundException {
+        List<StoredUser> storedUsers = new ArrayList<>();
+        StringBuilder queryBuilder = new StringBuilder();
+        
+        queryBuilder.append("SELECT U.USER_ID, U.FIRSTNAME, U.LASTNAME, ");
+        queryBuilder.append("U.CITY, U.ADDRESS, L.LAST_MINUTE, S.SKETCH ");
+        queryBuilder.append("FROM USERS U JOIN (");
+        if (storageMode == StorageMode.DAILY_BLOB) {
+            queryBuilder.append("SELECT USER_ID, MAX(LAST_MINUTE) ");
+            queryBuilder.append("AS LAST_MINUTE FROM TRAFFIC_DAILY ");
+        } else {
+            queryBuilder.append("SELECT USER_ID, MAX(MINUTE) ");
+            queryBuilder.append("AS LAST_MINUTE FROM TRAFFIC ");
+        }
+        queryBuilder.append("WHERE USER_ID > ? GROUP BY USER_ID ");
+        queryBuilder.append("ORDER BY USER_ID LIMIT ?) L ");
+        queryBuilder.append("ON L.USER_ID = U.USER_ID ");
+        queryBuilder.append("LEFT JOIN USER_STATS S ");
+        queryBuilder.append("ON S.USER_ID = U.USER_ID ");
+        queryBuilder.append("ORDER BY U.USER_ID;");
+        
+        String query = queryBuilder.toString();
+        
+        createMissingTables();
+        try (Connection connection = getConnection();
+             PreparedStatement prepStmnt = connection.prepareStatement(query)) {
+            
+            prepStmnt.setInt(1, afterUserId);
+            prepStmnt.setInt(2, pageSize);
+            
+            try (ResultSet rs = prepStmnt.executeQuery()) {
+                while (rs.next()) {
+                    int userId = rs.getInt(1);
+                    User user = new User(rs.getString(2), rs.getString(3),
+                            rs.getString(4), rs.getString(5), 
+                            trafficSeeds.applyAsLong(userId));
+                    Date lastMinute = new Date(rs.getTimestamp(6).getTime());
+                    byte[] sketch = rs.getBytes(7);
+                    
+                    committedUserIds.put(user, userId);
+                    storedUsages.put(user, (sketch == null)
+                            ? null : UsageSketch.fromBytes(sketch));
+                    storedUsers.add(new StoredUser(userId, user, lastMinute));
+                }
+            }
+        }
+        return storedUsers;
+    }
+
+    /**
+     * Forgets IDs and stored profiles of committed users. Users stored
+     * after it are searched in USERS table and their profiles are read
+     * again, so it is called only for users whose job is done.
+     */
+    void forgetCommittedUsers() {
+        committedUserIds.clear();
+        storedUsages.clear();
+    }
+
+    /**
+     * Reads all users and their traffic to columnar analytics arrays
+     * regardless of storage mode. Traffic is read in user and minute
+     * order, MySQL driver streams rows instead of holding whole 
+     * result set in memory.
+     * 
+     * @return loaded analytics
+     * @throws SQLException handling is implied to do in 
+     * AnalyticsServlet to show exception to program user.
+     * @throws ClassNotFoundException re-thrown from getConnection()
+     */
+    public TrafficAnalytics loadTrafficAnalytics() 
+            throws SQLException, ClassNotFoundException {
+        TrafficAnalytics.Builder builder = new TrafficAnalytics.Builder();
+        StringBuilder queryBuilder = new StringBuilder();
+        
+        if (storageMode == StorageMode.DAILY_BLOB) {
+            queryBuilder.append("SELECT USER_ID, FIRST_MINUTE, ");
+            queryBuilder.append("ENCODED_LOADS FROM TRAFFIC_DAILY ");
+            queryBuilder.append("ORDER BY USER_ID, FIRST_MINUTE;");
+        } else {
+            queryBuilder.append("SELECT USER_ID, MINUTE, LOADED_BYTES ");
+            queryBuilder.append("FROM TRAFFIC ORDER BY USER_ID, MINUTE;");
+        }
+        
+        String trafficQuery = queryBuilder.toString();
+        String usersQuery = "SELECT USER_ID, FIRSTNAME, LASTNAME, CITY "
+                + "FROM USERS ORDER BY USER_ID;";
+        
+        try (Connection connection = getConnection();
+             Statement statement = connection.createStatement()) {
+            
+            try (ResultSet rs = statement.executeQuery(usersQuery)) {
+                while (rs.next()) {
+                    String name = rs.getString(2) + " " + rs.getString(3);
+                    
+                    builder.addUser(rs.getInt(1), name, rs.getString(4));
+                }
+            }
+            
+            if (dbLink.startsWith("jdbc:mysql:")) {
+                statement.setFetchSize(Integer.MIN_VALUE);
+            }
+            
+            try (ResultSet rs = statement.executeQuery(trafficQuery)) {
+                while (rs.next()) {
+                    int userId = rs.getInt(1);
+                    Date minute = new Date(rs.getTimestamp(2).getTime());
+                    
+                    if (storageMode == StorageMode.DAILY_BLOB) {
+                        for (Map.Entry<Date, Integer> entry : TrafficCodec
+                                .decode(minute, rs.getBytes(3)).entrySet()) {
+                            builder.addTraffic(userId, entry.getKey(),
+                                    entry.getValue());
+                        }
+                    } else {
+                        builder.addTraffic(userId, minute, rs.getInt(3));
+                    }
+                }
+            }
+        }
+        return builder.build();
+    }
+
     /**
      * Get user ID from USERS table. If user not exists in table 
-     * it gives the command to create.
+     * it gives the command to create. IDs of users committed before
+     * are taken without query.
      * 
      * @param connection for SQL manipulations usage
      * @param user defines whose ID to get
@@ -164,70 +916,84 @@ public class UserDao {
      */
     private int getUserId(Connection connection, User user) 
             throws SQLException {
+        Integer committedUserId = committedUserIds.get(user);
+        
+        if (committedUserId != null) {
+            return committedUserId;
+        }
+        
         StringBuilder queryBuilder = new StringBuilder();
         
         queryBuilder.append("SELECT USER_ID FROM USERS ");
-        queryBuilder.append("WHERE FIRSTNAME = '");
-        queryBuilder.append(user.getFirstName());
-        queryBuilder.append("' AND LASTNAME = '");
-        queryBuilder.append(user.getLastName());
-        queryBuilder.append("' AND CITY = '");
-        queryBuilder.append(user.getCity());
-        queryBuilder.append("' AND ADDRESS = '");
-        queryBuilder.append(user.getAddress());
-        queryBuilder.append("';");
+        queryBuilder.append("WHERE FIRSTNAME = ? AND LASTNAME = ? ");
+        queryBuilder.append("AND CITY = ? AND ADDRESS = ?;");
         
         String query = queryBuilder.toString();
          
-        try (Statement statement = connection.createStatement()) {
-     
-            ResultSet rs = statement.executeQuery(query);
+        try (PreparedStatement prepStmnt = connection.prepareStatement(query)) {
+            
+            setUserDetails(prepStmnt, user);
+            try (ResultSet rs = prepStmnt.executeQuery()) {
                 if (rs.next()) {
-                    return rs.getInt("USER_ID");
-                } else {
-                    insertUser(connection, user);
-                    return getUserId(connection, user);
+                    return rs.getInt(1);
                 }
+            }
         }
+        return insertUser(connection, user);
     }
 
     /**
      * Execute statement to insert new user into USERS table with 
-     * registration details of received User.
+     * registration details of received User. If other job inserts the
+     * same user first, unique key of details turns insert into update
+     * which only takes ID of stored row.
      * 
      * @param connection for SQL manipulations usage
      * @param user defines whose credentials to store.
+     * @return user id in SQL schema USERS table
      * @throws SQLException handling is implied to do in Servlet 
      * to show exception to program user.
      */
-    private void insertUser(Connection connection, User user) 
+    private int insertUser(Connection connection, User user) 
             throws SQLException {
-        String userCreationTime = getSQLFormatTime(new Date());
         StringBuilder queryBuilder = new StringBuilder();
         
         queryBuilder.append("INSERT INTO USERS(");
         queryBuilder.append("FIRSTNAME, LASTNAME, CITY, ");
         queryBuilder.append("ADDRESS, CREATED_TIME) ");
-        queryBuilder.append("VALUES('");
-        queryBuilder.append(user.getFirstName());
-        queryBuilder.append("', '");
-        queryBuilder.append(user.getLastName());
-        queryBuilder.append("', '");
-        queryBuilder.append(user.getCity());
-        queryBuilder.append("', '");
-        queryBuilder.append(user.getAddress());
-        queryBuilder.append("', '");
-        queryBuilder.append(userCreationTime);
-        queryBuilder.append("');");
+        queryBuilder.append("VALUES( ?, ?, ?, ?, ?) ");
+        queryBuilder.append("ON DUPLICATE KEY UPDATE ");
+        queryBuilder.append("USER_ID = LAST_INSERT_ID(USER_ID);");
         
         String query = queryBuilder.toString();
         
-        try (Statement statement = connection.createStatement()) {
+        try (PreparedStatement prepStmnt = connection.prepareStatement(query);
+             Statement statement = connection.createStatement()) {
             
-            statement.executeUpdate(query);
+            setUserDetails(prepStmnt, user);
+            prepStmnt.setTimestamp(5, getSQLTime(new Date()));
+            prepStmnt.executeUpdate();
+            
+            try (ResultSet rs = statement.executeQuery(
+                    "SELECT LAST_INSERT_ID();")) {
+                rs.next();
+                return rs.getInt(1);
+            }
         }
     }
 
+    /**
+     * Sets registration details of user as the first four parameters
+     * of prepared statement.
+     */
+    private void setUserDetails(PreparedStatement prepStmnt, User user)
+            throws SQLException {
+        prepStmnt.setString(1, user.getFirstName());
+        prepStmnt.setString(2, user.getLastName());
+        prepStmnt.setString(3, user.getCity());
+        prepStmnt.setString(4, user.getAddress());
+    }
+
     /**
      * Creates new USERS table in SQL schema with check 
      * 'if not exists'
@@ -246,13 +1012,17 @@ public class UserDao {
         queryBuilder.append("CITY VARCHAR(20) NOT NULL, ");
         queryBuilder.append("ADDRESS VARCHAR(40) NOT NULL, ");
         queryBuilder.append("CREATED_TIME DATETIME NOT NULL, ");
-        queryBuilder.append("PRIMARY KEY (USER_ID)" + ");");
+        queryBuilder.append("PRIMARY KEY (USER_ID), ");
+        queryBuilder.append("UNIQUE KEY (FIRSTNAME, LASTNAME, CITY, ADDRESS)");
+        queryBuilder.append(");");
         
         String query = queryBuilder.toString();
      
         try (Statement statement = connection.createStatement()) {
      
             statement.execute(query);
+            addMissingUniqueKey(connection, "USERS", "FIRSTNAME", "LASTNAME",
+                    "CITY", "ADDRESS");
             isNotCreatedUsersTable = false;
         }
     }
@@ -274,6 +1044,7 @@ public class UserDao {
         queryBuilder.append("LOADED_BYTES INT UNSIGNED NOT NULL, ");
         queryBuilder.append("USER_ID INT UNSIGNED NOT NULL, ");
         queryBuilder.append("PRIMARY KEY (RECORD_ID), ");
+        queryBuilder.append("UNIQUE KEY (USER_ID, MINUTE), ");
         queryBuilder.append("FOREIGN KEY (USER_ID) ");
         queryBuilder.append("REFERENCES USERS (USER_ID));");
         
@@ -282,10 +1053,145 @@ public class UserDao {
         try (Statement statement = connection.createStatement()) {
      
             statement.execute(query);
+            addMissingUniqueKey(connection, "TRAFFIC", "USER_ID", "MINUTE");
             isNotCreatedTrafficTable = false;
         }
     }
 
+    /**
+     * Creates new TRAFFIC_DAILY table in SQL schema with check 
+     * 'if not exists'
+     * 
+     * @param connection for SQL manipulations usage
+     * @throws SQLException handling is implied to do in Servlet 
+     * to show exception to program user.
+     */
+    private void createDailyTrafficTable(Connection connection)
+            throws SQLException {
+        StringBuilder queryBuilder = new StringBuilder();
+        
+        queryBuilder.append("CREATE TABLE IF NOT EXISTS TRAFFIC_DAILY(");
+        queryBuilder.append("RECORD_ID INT UNSIGNED NOT NULL AUTO_INCREMENT, ");
+        queryBuilder.append("DAY DATE NOT NULL, ");
+        queryBuilder.append("FIRST_MINUTE DATETIME NOT NULL, ");
+        queryBuilder.append("LAST_MINUTE DATETIME NOT NULL, ");
+        queryBuilder.append("ENCODED_LOADS BLOB NOT NULL, ");
+        queryBuilder.append("USER_ID INT UNSIGNED NOT NULL, ");
+        queryBuilder.append("PRIMARY KEY (RECORD_ID), ");
+        queryBuilder.append("UNIQUE KEY (USER_ID, DAY), ");
+        queryBuilder.append("FOREIGN KEY (USER_ID) ");
+        queryBuilder.append("REFERENCES USERS (USER_ID));");
+        
+        String query = queryBuilder.toString();
+     
+        try (Statement statement = connection.createStatement()) {
+     
+            statement.execute(query);
+            addMissingUniqueKey(connection, "TRAFFIC_DAILY", "USER_ID", "DAY");
+            isNotCreatedDailyTrafficTable = false;
+        }
+    }
+
+    /**
+     * Adds unique key to table created by previous versions without
+     * it. Upserts rely on the key, so table which has duplicated rows
+     * and can't get the key is refused.
+     * 
+     * @param connection for SQL manipulations usage
+     * @param table table name
+     * @param columns columns of unique key
+     * @throws SQLException if key can't be added. Handling is implied
+     * to do in Servlet to show exception to program user.
+     */
+    private void addMissingUniqueKey(Connection connection, String table,
+            String... columns) throws SQLException {
+        Map<String, Set<String>> uniqueIndexes = new HashMap<>();
+        DatabaseMetaData metaData = connection.getMetaData();
+        
+        try (ResultSet rs = metaData.getIndexInfo(connection.getCatalog(),
+                null, table, true, false)) {
+            while (rs.next()) {
+                String indexName = rs.getString("INDEX_NAME");
+                String columnName = rs.getString("COLUMN_NAME");
+                
+                if (indexName == null || columnName == null 
+                        || rs.getBoolean("NON_UNIQUE")) {
+                    continue;
+                }
+                if (!uniqueIndexes.containsKey(indexName)) {
+                    uniqueIndexes.put(indexName, new HashSet<String>());
+                }
+                uniqueIndexes.get(indexName).add(columnName.toUpperCase());
+            }
+        }
+        
+        if (uniqueIndexes.containsValue(
+                new HashSet<>(Arrays.asList(columns)))) {
+            return;
+        }
+        
+        String columnsString = String.join(", ", columns);
+        StringBuilder queryBuilder = new StringBuilder();
+        
+        queryBuilder.append("ALTER TABLE ");
+        queryBuilder.append(table);
+        queryBuilder.append(" ADD CONSTRAINT ");
+        queryBuilder.append(table);
+        queryBuilder.append("_");
+        queryBuilder.append(String.join("_", columns));
+        queryBuilder.append(" UNIQUE (");
+        queryBuilder.append(columnsString);
+        queryBuilder.append(");");
+        
+        String query = queryBuilder.toString();
+        
+        try (Statement statement = connection.createStatement()) {
+            
+            statement.execute(query);
+        } catch (SQLException e) {
+            throw new SQLException(table + " has no unique key (" 
+                    + columnsString + ") and it can't be added, remove "
+                    + "duplicated rows first: " + e.getMessage(), 
+                    e.getSQLState(), e.getErrorCode(), e);
+        }
+    }
+
+    /**
+     * Creates new USER_STATS table in SQL schema with check 
+     * 'if not exists'
+     * 
+     * @param connection for SQL manipulations usage
+     * @throws SQLException handling is implied to do in Servlet 
+     * to show exception to program user.
+     */
+    private void createUserStatsTable(Connection connection)
+            throws SQLException {
+        StringBuilder queryBuilder = new StringBuilder();
+        
+        queryBuilder.append("CREATE TABLE IF NOT EXISTS USER_STATS(");
+        queryBuilder.append("USER_ID INT UNSIGNED NOT NULL, ");
+        queryBuilder.append("TOTAL_BYTES BIGINT UNSIGNED NOT NULL, ");
+        queryBuilder.append("MINUTES INT UNSIGNED NOT NULL, ");
+        queryBuilder.append("ACTIVE_MINUTES INT UNSIGNED NOT NULL, ");
+        queryBuilder.append("PEAK_MINUTE DATETIME, ");
+        queryBuilder.append("PEAK_BYTES INT UNSIGNED NOT NULL, ");
+        queryBuilder.append("P50_BYTES INT UNSIGNED NOT NULL, ");
+        queryBuilder.append("P95_BYTES INT UNSIGNED NOT NULL, ");
+        queryBuilder.append("P99_BYTES INT UNSIGNED NOT NULL, ");
+        queryBuilder.append("SKETCH BLOB NOT NULL, ");
+        queryBuilder.append("PRIMARY KEY (USER_ID), ");
+        queryBuilder.append("FOREIGN KEY (USER_ID) ");
+        queryBuilder.append("REFERENCES USERS (USER_ID));");
+        
+        String query = queryBuilder.toString();
+     
+        try (Statement statement = connection.createStatement()) {
+     
+            statement.execute(query);
+            isNotCreatedUserStatsTable = false;
+        }
+    }
+
     /**
      * Creates new connection to schema with current instance 
      * UserDao credentials
@@ -302,13 +1208,47 @@ public class UserDao {
     }
     
     /**
-     * Returns String with database readable date
+     * Constructs URL to connect to MySQL by JDBC driver.
+     * 
+     * @param hostName host name to connect
+     * @param portName port of host to connect
+     * @param dbName schema name to connect
+     * @return JDBC URL
+     */
+    private static String getMySQLLink(String hostName, String portName,
+            String dbName) {
+        StringBuilder linkBuilder = new StringBuilder();
+        
+        linkBuilder.append("jdbc:mysql://");
+        linkBuilder.append(hostName);
+        linkBuilder.append(":");
+        linkBuilder.append(portName);
+        linkBuilder.append("/");
+        linkBuilder.append(dbName);
+        linkBuilder.append("?rewriteBatchedStatements=true");
+        
+        return linkBuilder.toString();
+    }
+    
+    /**
+     * Returns time parameter of prepared statement. Unlike shared 
+     * SimpleDateFormat it is safe for jobs run by several threads.
+     * 
+     * @param date is given Date object
+     * @return SQL time of the same instant
+     */
+    private Timestamp getSQLTime(Date date) {
+        return new Timestamp(date.getTime());
+    }
+    
+    /**
+     * Returns day parameter of prepared statement.
      * 
      * @param date is given Date object
-     * @return String with time in database accepted format
+     * @return SQL date of the same day in default time zone
      */
-    private String getSQLFormatTime(Date date) {
-        return sqlDateFormat.format(date);
+    private java.sql.Date getSQLDay(Date date) {
+        return new java.sql.Date(date.getTime());
     }
     
     private boolean isNotCreatedUsersTable() {
@@ -318,4 +1258,39 @@ public class UserDao {
     private boolean isNotCreatedTrafficTable() {
         return isNotCreatedTrafficTable;
     }
+
+    private boolean isNotCreatedDailyTrafficTable() {
+        return isNotCreatedDailyTrafficTable;
+    }
+
+    private boolean isNotCreatedUserStatsTable() {
+        return isNotCreatedUserStatsTable;
+    }
+
+    /**
+     * User read from schema with the last minute of stored traffic.
+     */
+    static class StoredUser {
+        private final int userId;
+        private final User user;
+        private final Date lastMinute;
+
+        StoredUser(int userId, User user, Date lastMinute) {
+            this.userId = userId;
+            this.user = user;
+            this.lastMinute = lastMinute;
+        }
+
+        int getUserId() {
+            return userId;
+        }
+
+        User getUser() {
+            return user;
+        }
+
+        Date getLastMinute() {
+            return lastMinute;
+        }
+    }
 }
@@ -0,0 +1,83 @@
+<%@ page contentType="text/html; charset=utf-8" %>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c"%>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/fmt" prefix="fmt"%>
+
+<!DOCTYPE html PUBLIC "-//W3C//DTD XHTML 1.0 Transitional//EN" "http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd">
+<html xmlns="http://www.w3.org/1999/xhtml">
+<head>
+    <meta http-equiv="Content-Type" content="text/html; charset=ISO-8859-1" />
+    <link href="css/style.css" rel="stylesheet" type="text/css" />
+</head>
+    <body> 
+    	<form action="<c:url value="/analytics"/>" method="post">
+    		<table class="ver2">
+    			<tr>
+                    <th colspan = "4">Load traffic once from MySQL, then ask questions about it. 
+                        <a href="<c:url value="/index.jsp"/>">Back to generation</a>
+                    </th>
+                </tr>
+                <tr>
+                    <td>Host name:</td>
+                    <td><input type="text" name="hostName" value="${hostName}" /></td>
+                    <td>Port:</td>
+                    <td><input type="text" name="portName" value="${portName}" /></td>
+                </tr>
+                <tr>
+                    <td>DB/Schema name:</td>
+                    <td><input type="text" name="dbName" value="${dbName}" /></td>
+                    <td>DB username:</td>
+                    <td><input type="text" name="dbUserName" value="${dbUserName}" /></td>
+                </tr>
+                <tr>
+                    <td>DB password:</td>
+                    <td><input type="password" name="dbPassword" value="${dbPassword}" /></td>
+                    <td>Traffic storage:</td>
+                    <td>
+                        <select name="storageMode">
+                            <option value="PER_MINUTE">Row per minute</option>
+                            <option value="DAILY_BLOB" ${storageMode == 'DAILY_BLOB' ? 'selected' : ''}>Compressed row per day</option>
+                        </select>
+                    </td>
+                </tr>
+                <tr>
+                    <td colspan = "4" align = "center"><button type="submit" name="action" value="load">Load traffic</button></td>
+                </tr>
+                <tr>
+                    <td>Top users per city:</td>
+                    <td><input type="text" name="topUsers" value="${topUsers}" /></td>
+                    <td colspan = "2">
+                        <button type="submit" name="action" value="topUsers">Top users</button>
+                        <button type="submit" name="action" value="peakMinutes">Peak minutes</button>
+                        <button type="submit" name="action" value="percentiles">Percentiles</button>
+                    </td>
+                </tr>
+                <tr>
+                    <td colspan = "4" align = "center">${result}</td>
+                </tr>
+                <c:forEach var="city" items="${topUsersByCity}">
+                    <c:forEach var="user" items="${city.value}">
+                        <tr>
+                            <td>${city.key}</td>
+                            <td>${user.userId}</td>
+                            <td>${user.name}</td>
+                            <td>${user.loadedBytes} bytes</td>
+                        </tr>
+                    </c:forEach>
+                </c:forEach>
+                <c:forEach var="peak" items="${peakMinutes}">
+                    <tr>
+                        <td><fmt:formatDate value="${peak.key}" pattern="dd.MM.yyyy" /></td>
+                        <td><fmt:formatDate value="${peak.value.minute}" pattern="HH:mm" /></td>
+                        <td colspan = "2">${peak.value.loadedBytes} bytes</td>
+                    </tr>
+                </c:forEach>
+                <c:forEach var="percentile" items="${percentiles}">
+                    <tr>
+                        <td>p<fmt:formatNumber value="${percentile.key}" maxFractionDigits="1" /></td>
+                        <td colspan = "3">${percentile.value} bytes per minute</td>
+                    </tr>
+                </c:forEach>
+            </table>
+        </form>
+    </body>
+</html>
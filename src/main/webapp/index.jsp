@@ -8,11 +8,12 @@
     <link href="css/style.css" rel="stylesheet" type="text/css" />
 </head>
     <body> 
-    	<form action="<c:url value="/main"/>" method="post">
+    	<form action="<c:url value="/main"/>" method="post" onsubmit="showProgress()">
     		<table class="ver2">
     			<tr>
                     <th colspan = "4">Please, fill in MySQL connection form, 
                         users quantity to create and time period to load traffic. 
+                        <a href="<c:url value="/analytics.jsp"/>">Traffic analytics</a>
                 </th>
                 </tr>
                 <tr>
@@ -38,6 +39,39 @@
 				    <td><input type="text" name="dbUserName" value="${dbUserName}" /></td>
 			    	<td colspan = "2"><span class="bold">Date and time format is 'dd.MM.yyyy HH:mm'.</span></td>
 			    </tr>
+			    <tr>
+			        <td>Generation order:</td>
+			        <td>
+			            <select name="generationOrder">
+			                <option value="USER_MAJOR">User by user</option>
+			                <option value="WINDOW_MAJOR" ${generationOrder == 'WINDOW_MAJOR' ? 'selected' : ''}>Day by day</option>
+			            </select>
+			        </td>
+			        <td>Traffic storage:</td>
+			        <td>
+			            <select name="storageMode">
+			                <option value="PER_MINUTE">Row per minute</option>
+			                <option value="DAILY_BLOB" ${storageMode == 'DAILY_BLOB' ? 'selected' : ''}>Compressed row per day</option>
+			            </select>
+			        </td>
+			    </tr>
+			    <tr>
+			        <td>Job:</td>
+			        <td>
+			            <select name="jobType">
+			                <option value="CREATE_USERS">Create new users</option>
+			                <option value="EXTEND_USERS" ${jobType == 'EXTEND_USERS' ? 'selected' : ''}>Extend stored users to end date</option>
+			            </select>
+			        </td>
+			        <td></td>
+			        <td></td>
+			    </tr>
+			    <tr>
+			        <td>Seed (optional):</td>
+			        <td><input type="text" name="seed" value="${seed}" /></td>
+			        <td>Workers (optional):</td>
+			        <td><input type="text" name="workers" value="${workers}" title="host:port, host:port" /></td>
+			    </tr>
 			    <tr>
 			        <td>DB password:</td>
 				    <td><input type="password" name="dbPassword"  value="${dbPassword}"/></td>
@@ -45,10 +79,25 @@
 			        <td align = "left"><input type="submit" value="Run" name="Run"/></td>
 			    </tr>
 			    <tr>
-			        <td colspan = "4" align = "center">${result}</td>
+			        <td colspan = "4" align = "center"><span id="progress"></span>${result}</td>
 			    </tr>
             </table>
         </form>
+        <script type="text/javascript">
+            /* Polls stored minutes of the running job till result page comes */
+            function showProgress() {
+                setInterval(function() {
+                    var request = new XMLHttpRequest();
+
+                    request.onload = function() {
+                        document.getElementById("progress").innerHTML =
+                                "Running... " + request.responseText + " traffic minutes stored.";
+                    };
+                    request.open("GET", "<c:url value="/progress"/>", true);
+                    request.send();
+                }, 1000);
+            }
+        </script>
     </body>
 </html>
         
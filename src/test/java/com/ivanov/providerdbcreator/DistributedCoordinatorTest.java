@@ -0,0 +1,91 @@
+package com.ivanov.providerdbcreator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Coordinator merges progress and results of workers, which are
+ * replaced here by loopback sockets with scripted reports.
+ *
+ * @author Aleksandr Ivanov
+ */
+public class DistributedCoordinatorTest {
+
+    @Test
+    public void mergesProgressOfWorkers() throws Exception {
+        try (ServerSocket first = startWorker(5, 10, 12);
+             ServerSocket second = startWorker(7, 7)) {
+            List<Long> progress =
+                    Collections.synchronizedList(new ArrayList<>());
+            DistributedCoordinator coordinator = new DistributedCoordinator(
+                    DistributedCoordinator.parseWorkers(
+                            "127.0.0.1:" + first.getLocalPort()
+                            + ", 127.0.0.1:" + second.getLocalPort()),
+                    progress::add);
+            Map<String, String[]> parameters = new HashMap<>();
+
+            parameters.put("usersQuantity", new String[] {"2"});
+
+            assertEquals(19, coordinator.run(parameters, 2, 1L));
+            assertEquals(19, coordinator.getStoredRows());
+            assertEquals(5, progress.size());
+            assertEquals(Long.valueOf(19), progress.get(progress.size() - 1));
+            for (int i = 0; i < progress.size(); i++) {
+                long rows = progress.get(i);
+
+                assertTrue(rows + " rows", rows > 0 && rows <= 19);
+                assertTrue("progress goes back to " + rows,
+                        i == 0 || rows >= progress.get(i - 1));
+            }
+        }
+    }
+
+    /**
+     * Starts worker which reads one job, reports given stored rows as
+     * PROGRESS and the last of them as DONE.
+     */
+    private ServerSocket startWorker(long... reports) throws IOException {
+        ServerSocket worker = new ServerSocket(0, 50,
+                InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(() -> {
+            try (Socket socket = worker.accept()) {
+                DataInputStream in =
+                        new DataInputStream(socket.getInputStream());
+                DataOutputStream out =
+                        new DataOutputStream(socket.getOutputStream());
+                int count = in.readInt();
+
+                for (int i = 0; i < count * 2; i++) {
+                    in.readUTF();
+                }
+                for (int i = 0; i < reports.length; i++) {
+                    out.writeUTF((i == reports.length - 1)
+                            ? GenerationWorker.DONE
+                            : GenerationWorker.PROGRESS);
+                    out.writeLong(reports[i]);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                return;
+            }
+        });
+
+        thread.setDaemon(true);
+        thread.start();
+        return worker;
+    }
+}
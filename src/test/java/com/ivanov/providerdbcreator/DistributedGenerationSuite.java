@@ -0,0 +1,413 @@
+package com.ivanov.providerdbcreator;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Offline distributed generation suite. It forks {@link GenerationWorker}
+ * JVMs on loopback which store to shared embedded database and checks
+ * that coordinated job stores the same USERS rows, TRAFFIC rows and
+ * minutes quantity as the same seeded job run by one process. It also
+ * checks that silent worker is failed by read timeout instead of
+ * hanging the job, that failed worker fails the job without waiting
+ * for slower ones and that worker cancels partition of gone
+ * coordinator instead of delaying the next job.
+ *
+ * Like {@link ThroughputRegressionSuite} it is not a unit test and is
+ * run only by "perf" Maven profile in a separate JVM: mvn -Pperf verify.
+ * Database is H2 file database in MySQL mode with automatic server, so
+ * worker processes share it; "perf.distributedDb" property sets its
+ * file path.
+ *
+ * @author Aleksandr Ivanov
+ */
+public class DistributedGenerationSuite {
+    private static final int WORKERS_QUANTITY = 3;
+    private static final int USERS_QUANTITY = 7;
+    private static final String[] TABLES = {
+        "USER_STATS", "TRAFFIC_DAILY", "TRAFFIC", "USERS"
+    };
+    private static final String USERS_QUERY = "SELECT FIRSTNAME, LASTNAME, "
+            + "CITY, ADDRESS FROM USERS "
+            + "ORDER BY FIRSTNAME, LASTNAME, CITY, ADDRESS;";
+    private static final String TRAFFIC_QUERY = "SELECT U.FIRSTNAME, "
+            + "U.LASTNAME, U.CITY, U.ADDRESS, T.MINUTE, T.LOADED_BYTES "
+            + "FROM TRAFFIC T JOIN USERS U ON U.USER_ID = T.USER_ID "
+            + "ORDER BY U.FIRSTNAME, U.LASTNAME, U.CITY, U.ADDRESS, T.MINUTE;";
+    private final String jdbcUrl;
+    private final List<Process> workers = new ArrayList<>();
+    private final List<String> failures = new ArrayList<>();
+
+    private DistributedGenerationSuite() {
+        File database = new File(System.getProperty("perf.distributedDb",
+                "target/perf/distributed"));
+
+        this.jdbcUrl = "jdbc:h2:file:" + database.getAbsolutePath()
+                + ";MODE=MySQL;AUTO_SERVER=TRUE;NON_KEYWORDS=MINUTE,DAY";
+    }
+
+    public static void main(String[] args) throws Exception {
+        DistributedGenerationSuite suite = new DistributedGenerationSuite();
+
+        try {
+            suite.run();
+        } finally {
+            suite.stopWorkers();
+        }
+        if (!suite.failures.isEmpty()) {
+            for (String failure : suite.failures) {
+                System.err.println("Distributed generation failure: "
+                        + failure);
+            }
+            System.exit(1);
+        }
+        System.out.println("Distributed generation matches single process");
+    }
+
+    private void run() throws Exception {
+        /* the open connection keeps this JVM the database server */
+        try (Connection connection = getConnection()) {
+            dropTables(connection);
+
+            long singleRows = runJob((String) null);
+            List<String> singleUsers = readRows(connection, USERS_QUERY);
+            List<String> singleTraffic = readRows(connection, TRAFFIC_QUERY);
+
+            dropTables(connection);
+
+            StringBuilder workersBuilder = new StringBuilder();
+
+            for (int i = 0; i < WORKERS_QUANTITY; i++) {
+                workersBuilder.append(i == 0 ? "" : ", ");
+                workersBuilder.append("127.0.0.1:");
+                workersBuilder.append(startWorker());
+            }
+
+            long distributedRows = runJob(workersBuilder.toString());
+            List<String> distributedUsers = readRows(connection, USERS_QUERY);
+            List<String> distributedTraffic =
+                    readRows(connection, TRAFFIC_QUERY);
+
+            check(singleUsers.size() == USERS_QUANTITY
+                    && singleUsers.equals(distributedUsers),
+                    "USERS rows differ: " + singleUsers + " and "
+                    + distributedUsers);
+            check(!singleTraffic.isEmpty()
+                    && singleTraffic.equals(distributedTraffic),
+                    "TRAFFIC rows differ: " + singleTraffic.size() + " and "
+                    + distributedTraffic.size() + " rows");
+            check(singleRows == singleTraffic.size()
+                    && distributedRows == singleRows,
+                    "stored minutes differ: " + singleRows + " and "
+                    + distributedRows);
+            check(Controller.getInstance().getProgressRows() == distributedRows,
+                    "merged progress " + Controller.getInstance()
+                    .getProgressRows() + " differs from " + distributedRows);
+            checkOrphanedPartitionIsCancelled();
+            checkFailedWorkerCancelsJob();
+        }
+        checkSilentWorkerFails();
+    }
+
+    /**
+     * Worker whose coordinator is gone cancels the partition long 
+     * before its end, so the next job gets reports in time. Orphaned
+     * job is user-major, so it is cancelled inside a month of one user
+     * traffic.
+     */
+    private void checkOrphanedPartitionIsCancelled() throws Exception {
+        int port = startWorker();
+        Map<String, String> orphan = new HashMap<>();
+
+        for (Map.Entry<String, String[]> entry
+                : getJobParameters(null).entrySet()) {
+            orphan.put(entry.getKey(), entry.getValue()[0]);
+        }
+        orphan.put("usersQuantity", "100");
+        orphan.put("partitionFrom", "0");
+        orphan.put("partitionTo", "100");
+        orphan.put("endDate", "01.02.2015 00:00");
+        orphan.put("generationOrder", GenerationOrder.USER_MAJOR.name());
+        orphan.put("seed", "1");
+
+        try (Socket coordinator = new Socket(
+                InetAddress.getLoopbackAddress(), port)) {
+            GenerationWorker.writeJob(new DataOutputStream(
+                    coordinator.getOutputStream()), orphan);
+            Thread.sleep(500L);
+        }
+
+        String failure = null;
+
+        try {
+            runJob("127.0.0.1:" + port);
+        } catch (IOException e) {
+            failure = e.getMessage();
+        }
+        check(failure == null,
+                "worker didn't cancel orphaned partition: " + failure);
+    }
+
+    /**
+     * Worker which reports error fails the job at once, while slow
+     * worker is still storing its long partition. Slow worker gets 
+     * its socket closed, cancels the partition and runs the next job
+     * in time.
+     */
+    private void checkFailedWorkerCancelsJob() throws Exception {
+        int slowPort = startWorker();
+
+        try (ServerSocket failingWorker = new ServerSocket(0, 50,
+                InetAddress.getLoopbackAddress())) {
+            Thread acceptor = new Thread(() -> {
+                try (Socket socket = failingWorker.accept()) {
+                    DataInputStream in =
+                            new DataInputStream(socket.getInputStream());
+                    DataOutputStream out =
+                            new DataOutputStream(socket.getOutputStream());
+                    int count = in.readInt();
+
+                    for (int i = 0; i < count * 2; i++) {
+                        in.readUTF();
+                    }
+                    Thread.sleep(500L);
+                    out.writeUTF(GenerationWorker.ERROR);
+                    out.writeUTF("scripted failure");
+                    out.flush();
+                } catch (IOException | InterruptedException e) {
+                    return;
+                }
+            });
+
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            Map<String, String[]> parameters = getJobParameters("127.0.0.1:"
+                    + failingWorker.getLocalPort() + ", 127.0.0.1:"
+                    + slowPort);
+
+            parameters.put("usersQuantity", new String[] {"100"});
+            parameters.put("endDate", new String[] {"01.02.2015 00:00"});
+            parameters.put("generationOrder",
+                    new String[] {GenerationOrder.USER_MAJOR.name()});
+
+            long startMillis = System.currentTimeMillis();
+            String failure = null;
+
+            try {
+                runJob(parameters);
+            } catch (IOException e) {
+                failure = e.getMessage();
+            }
+            check(failure != null && failure.contains("scripted failure")
+                    && System.currentTimeMillis() - startMillis < 10_000L,
+                    "failed worker didn't fail the job at once: " + failure);
+        }
+
+        String failure = null;
+
+        try {
+            runJob("127.0.0.1:" + slowPort);
+        } catch (IOException e) {
+            failure = e.getMessage();
+        }
+        check(failure == null,
+                "slow worker didn't cancel partition of failed job: "
+                + failure);
+    }
+
+    /**
+     * Worker which accepts job and never reports fails the job.
+     */
+    private void checkSilentWorkerFails() throws Exception {
+        try (ServerSocket silentWorker = new ServerSocket(0, 50,
+                InetAddress.getLoopbackAddress())) {
+            Thread acceptor = new Thread(() -> {
+                try {
+                    Socket socket = silentWorker.accept();
+
+                    try {
+                        Thread.sleep(60_000L);
+                    } finally {
+                        socket.close();
+                    }
+                } catch (IOException | InterruptedException e) {
+                    return;
+                }
+            });
+
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            long startMillis = System.currentTimeMillis();
+            String failure = null;
+
+            try {
+                runJob("127.0.0.1:" + silentWorker.getLocalPort());
+            } catch (IOException e) {
+                failure = e.getMessage();
+            }
+            acceptor.interrupt();
+            check(failure != null && failure.contains("no report")
+                    && System.currentTimeMillis() - startMillis < 30_000L,
+                    "silent worker didn't fail the job: " + failure);
+        }
+    }
+
+    /**
+     * Runs the same seeded job in this process or on workers.
+     *
+     * @param workers comma separated worker addresses or null
+     * @return stored minutes quantity
+     */
+    private long runJob(String workers) throws Exception {
+        return runJob(getJobParameters(workers));
+    }
+
+    /**
+     * Runs job on workers of parameters or in this process if there
+     * are no workers.
+     *
+     * @return stored minutes quantity
+     */
+    private long runJob(Map<String, String[]> parameters) throws Exception {
+        Controller controller = Controller.getInstance();
+
+        controller.setParameters(parameters);
+        if (parameters.containsKey("workers")) {
+            return controller.storeTrafficPerMinute();
+        }
+        return controller.storeTrafficPerMinute(new UserDao(jdbcUrl, "sa", "",
+                StorageMode.PER_MINUTE));
+    }
+
+    private Map<String, String[]> getJobParameters(String workers) {
+        Map<String, String[]> parameters = new HashMap<>();
+
+        parameters.put("hostName", new String[] {"embedded"});
+        parameters.put("portName", new String[] {"0"});
+        parameters.put("dbName", new String[] {"distributed"});
+        parameters.put("dbUserName", new String[] {"sa"});
+        parameters.put("dbPassword", new String[] {""});
+        parameters.put("usersQuantity",
+                new String[] {String.valueOf(USERS_QUANTITY)});
+        parameters.put("startDate", new String[] {"01.01.2015 22:00"});
+        parameters.put("endDate", new String[] {"02.01.2015 04:00"});
+        parameters.put("storageMode",
+                new String[] {StorageMode.PER_MINUTE.name()});
+        parameters.put("seed", new String[] {"20150101"});
+        if (workers != null) {
+            parameters.put("workers", new String[] {workers});
+        }
+        return parameters;
+    }
+
+    /**
+     * Forks worker JVM with this JVM class path and waits till it
+     * listens.
+     *
+     * @return worker port
+     */
+    private int startWorker() throws IOException {
+        int port;
+
+        try (ServerSocket freePort = new ServerSocket(0)) {
+            port = freePort.getLocalPort();
+        }
+
+        String java = System.getProperty("java.home") + File.separator
+                + "bin" + File.separator + "java";
+        Process worker = new ProcessBuilder(java, "-cp",
+                System.getProperty("java.class.path"),
+                GenerationWorker.class.getName(), String.valueOf(port),
+                "127.0.0.1", jdbcUrl).redirectErrorStream(true).start();
+
+        workers.add(worker);
+
+        BufferedReader output = new BufferedReader(new InputStreamReader(
+                worker.getInputStream(), StandardCharsets.UTF_8));
+        String line = output.readLine();
+
+        if (line == null || !line.startsWith("Generation worker listens")) {
+            throw new IOException("worker on port " + port
+                    + " didn't start: " + line);
+        }
+
+        Thread printer = new Thread(() -> {
+            try {
+                for (String next = output.readLine(); next != null;
+                        next = output.readLine()) {
+                    System.out.println("[worker " + port + "] " + next);
+                }
+            } catch (IOException e) {
+                return;
+            }
+        });
+
+        printer.setDaemon(true);
+        printer.start();
+        return port;
+    }
+
+    private void stopWorkers() {
+        for (Process worker : workers) {
+            worker.destroyForcibly();
+        }
+    }
+
+    private void check(boolean isPassed, String failure) {
+        if (!isPassed) {
+            failures.add(failure);
+        }
+    }
+
+    private List<String> readRows(Connection connection, String query)
+            throws SQLException {
+        List<String> rows = new ArrayList<>();
+
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(query)) {
+            int columns = rs.getMetaData().getColumnCount();
+
+            while (rs.next()) {
+                StringBuilder rowBuilder = new StringBuilder();
+
+                for (int i = 1; i <= columns; i++) {
+                    rowBuilder.append(i == 1 ? "" : "|");
+                    rowBuilder.append(rs.getString(i));
+                }
+                rows.add(rowBuilder.toString());
+            }
+        }
+        return rows;
+    }
+
+    private void dropTables(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String table : TABLES) {
+                statement.execute("DROP TABLE IF EXISTS " + table + ";");
+            }
+        }
+    }
+
+    private Connection getConnection() throws SQLException {
+        return DriverManager.getConnection(jdbcUrl, "sa", "");
+    }
+}
@@ -0,0 +1,141 @@
+package com.ivanov.providerdbcreator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Transient conflicts recognition and repeating of transactions.
+ *
+ * @author Aleksandr Ivanov
+ */
+public class SQLRetryPolicyTest {
+
+    @Test
+    public void mysqlDeadlockAndLockWaitAreTransient() {
+        assertTrue(SQLRetryPolicy.isTransient(
+                new SQLException("Deadlock found", "40001", 1213)));
+        assertTrue(SQLRetryPolicy.isTransient(
+                new SQLException("Lock wait timeout exceeded", "HY000", 1205)));
+    }
+
+    @Test
+    public void serializationFailureAndDeadlockAreTransient() {
+        assertTrue(SQLRetryPolicy.isTransient(
+                new SQLException("serialization failure", "40001")));
+        assertTrue(SQLRetryPolicy.isTransient(
+                new SQLException("deadlock detected", "40P01")));
+        assertTrue(SQLRetryPolicy.isTransient(
+                new SQLTransactionRollbackException("rolled back")));
+    }
+
+    /**
+     * Lost connection and timeouts are transient for JDBC but the
+     * transaction is not repeated after them.
+     */
+    @Test
+    public void connectionErrorsAndTimeoutsAreNotTransient() {
+        assertFalse(SQLRetryPolicy.isTransient(
+                new SQLTransientConnectionException("connection lost",
+                        "08S01")));
+        assertFalse(SQLRetryPolicy.isTransient(
+                new SQLTimeoutException("timeout expired", "HYT00")));
+    }
+
+    @Test
+    public void otherRollbackStatesAreNotTransient() {
+        assertFalse(SQLRetryPolicy.isTransient(
+                new SQLException("integrity constraint violation", "40002")));
+        assertFalse(SQLRetryPolicy.isTransient(
+                new SQLException("Duplicate entry", "23000", 1062)));
+        assertFalse(SQLRetryPolicy.isTransient(new SQLException("no state")));
+    }
+
+    /**
+     * Batch failure reports the conflict by chained exception or
+     * cause.
+     */
+    @Test
+    public void nestedConflictIsTransient() {
+        BatchUpdateException chained = new BatchUpdateException();
+
+        chained.setNextException(
+                new SQLException("Deadlock found", "HY000", 1213));
+        assertTrue(SQLRetryPolicy.isTransient(chained));
+        assertTrue(SQLRetryPolicy.isTransient(new SQLException("batch failed",
+                "HY000", new SQLException("serialization failure", "40001"))));
+        assertTrue(SQLRetryPolicy.isTransient(new SQLException("batch failed",
+                new IllegalStateException(new SQLException(
+                        "Lock wait timeout exceeded", "HY000", 1205)))));
+    }
+
+    /**
+     * Every repeat waits random time within growing limit.
+     */
+    @Test
+    public void transientConflictIsRepeated() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        List<Long> sleeps = new ArrayList<>();
+
+        SQLRetryPolicy.runWithRetries(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new SQLException("Deadlock found", "HY000", 1213);
+            }
+        }, sleeps::add);
+        assertEquals(3, attempts.get());
+        assertEquals(2, sleeps.size());
+        for (int i = 0; i < sleeps.size(); i++) {
+            assertTrue(sleeps.get(i) >= 0);
+            assertTrue(sleeps.get(i) <= SQLRetryPolicy.getBackoffLimit(i + 1));
+        }
+        assertTrue(SQLRetryPolicy.getBackoffLimit(2)
+                > SQLRetryPolicy.getBackoffLimit(1));
+    }
+
+    @Test
+    public void lastConflictIsThrownWhenAttemptsAreOver() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        SQLException conflict = new SQLException("serialization failure",
+                "40001");
+
+        try {
+            SQLRetryPolicy.runWithRetries(() -> {
+                attempts.incrementAndGet();
+                throw conflict;
+            }, millis -> {});
+            fail("conflict of every attempt is not thrown");
+        } catch (SQLException e) {
+            assertSame(conflict, e);
+        }
+        assertEquals(SQLRetryPolicy.MAX_ATTEMPTS, attempts.get());
+    }
+
+    @Test
+    public void otherErrorIsNotRepeated() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            SQLRetryPolicy.runWithRetries(() -> {
+                attempts.incrementAndGet();
+                throw new SQLException("Duplicate entry", "23000", 1062);
+            }, millis -> fail("error is repeated"));
+            fail("error is not thrown");
+        } catch (SQLException e) {
+            assertEquals("23000", e.getSQLState());
+        }
+        assertEquals(1, attempts.get());
+    }
+}
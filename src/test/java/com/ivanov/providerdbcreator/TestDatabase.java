@@ -0,0 +1,150 @@
+package com.ivanov.providerdbcreator;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Embedded H2 database in MySQL mode for tests which run generation
+ * jobs by Controller and UserDao and check stored rows by SQL. Every
+ * test class uses its own named in-memory database.
+ *
+ * @author Aleksandr Ivanov
+ */
+final class TestDatabase {
+    static final String USER_NAME = "sa";
+    static final String PASSWORD = "";
+    static final String SEED = "20150101";
+    static final int USERS_QUANTITY = 3;
+    private static final String[] TABLES = {
+        "USER_STATS", "TRAFFIC_DAILY", "TRAFFIC", "USERS"
+    };
+    private final String jdbcUrl;
+
+    TestDatabase(String name) {
+        this.jdbcUrl = "jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1;"
+                + "NON_KEYWORDS=MINUTE,DAY";
+    }
+
+    UserDao getUserDao(StorageMode storageMode) {
+        return new UserDao(jdbcUrl, USER_NAME, PASSWORD, storageMode);
+    }
+
+    /**
+     * Creates parameters of seeded job like Servlet gets them from
+     * the form.
+     *
+     * @param startDate in view format or null for extension
+     * @param endDate in view format
+     */
+    Map<String, String[]> getJobParameters(StorageMode storageMode,
+            String startDate, String endDate) {
+        Map<String, String[]> parameters = new HashMap<>();
+
+        parameters.put("hostName", new String[] {"embedded"});
+        parameters.put("portName", new String[] {"0"});
+        parameters.put("dbName", new String[] {"test"});
+        parameters.put("dbUserName", new String[] {USER_NAME});
+        parameters.put("dbPassword", new String[] {PASSWORD});
+        parameters.put("usersQuantity",
+                new String[] {String.valueOf(USERS_QUANTITY)});
+        parameters.put("startDate", new String[] {startDate});
+        parameters.put("endDate", new String[] {endDate});
+        parameters.put("storageMode", new String[] {storageMode.name()});
+        parameters.put("seed", new String[] {SEED});
+        return parameters;
+    }
+
+    /**
+     * Runs job by Controller with UserDao of this database.
+     *
+     * @return stored minutes quantity
+     */
+    long runJob(Map<String, String[]> parameters) throws Exception {
+        Controller controller = Controller.getInstance();
+        StorageMode storageMode =
+                StorageMode.valueOf(parameters.get("storageMode")[0]);
+
+        controller.setParameters(parameters);
+        return controller.storeTrafficPerMinute(getUserDao(storageMode));
+    }
+
+    /**
+     * Creates USERS and TRAFFIC tables as the first program version
+     * did, without unique keys.
+     */
+    void createLegacyTables() throws SQLException {
+        execute("CREATE TABLE USERS("
+                + "USER_ID INT UNSIGNED NOT NULL AUTO_INCREMENT, "
+                + "FIRSTNAME VARCHAR(20) NOT NULL, "
+                + "LASTNAME VARCHAR(20) NOT NULL, "
+                + "CITY VARCHAR(20) NOT NULL, "
+                + "ADDRESS VARCHAR(40) NOT NULL, "
+                + "CREATED_TIME DATETIME NOT NULL, "
+                + "PRIMARY KEY (USER_ID));");
+        execute("CREATE TABLE TRAFFIC("
+                + "RECORD_ID INT UNSIGNED NOT NULL AUTO_INCREMENT, "
+                + "MINUTE DATETIME NOT NULL, "
+                + "LOADED_BYTES INT UNSIGNED NOT NULL, "
+                + "USER_ID INT UNSIGNED NOT NULL, "
+                + "PRIMARY KEY (RECORD_ID), "
+                + "FOREIGN KEY (USER_ID) REFERENCES USERS (USER_ID));");
+    }
+
+    /**
+     * Reads query result as rows of "|" separated column values.
+     */
+    List<String> readRows(String query) throws SQLException {
+        List<String> rows = new ArrayList<>();
+
+        try (Connection connection = getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(query)) {
+            int columns = rs.getMetaData().getColumnCount();
+
+            while (rs.next()) {
+                StringBuilder rowBuilder = new StringBuilder();
+
+                for (int i = 1; i <= columns; i++) {
+                    rowBuilder.append(i == 1 ? "" : "|");
+                    rowBuilder.append(rs.getString(i));
+                }
+                rows.add(rowBuilder.toString());
+            }
+        }
+        return rows;
+    }
+
+    long countRows(String table) throws SQLException {
+        try (Connection connection = getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(
+                     "SELECT COUNT(*) FROM " + table + ";")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    void dropTables() throws SQLException {
+        for (String table : TABLES) {
+            execute("DROP TABLE IF EXISTS " + table + ";");
+        }
+    }
+
+    void execute(String query) throws SQLException {
+        try (Connection connection = getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(query);
+        }
+    }
+
+    Connection getConnection() throws SQLException {
+        return DriverManager.getConnection(jdbcUrl, USER_NAME, PASSWORD);
+    }
+}
@@ -0,0 +1,573 @@
+package com.ivanov.providerdbcreator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Offline throughput regression suite. It runs the whole Controller to
+ * UserDao path against MySQL compatible database for every combination
+ * of users quantity, time line length, storage mode and generation
+ * order with the same seed, in rounds of at least a second per case.
+ *
+ * Nothing is compared as absolute rows per second or bytes of one
+ * machine. Every case is measured relative to reference case (the
+ * first one) of the same round: throughput, peak heap during the job
+ * and heap retained after full GC at every stored user. Reference case
+ * itself is compared by rows per fixed CPU calibration loop, so a
+ * slower write path shared by all cases fails too. GC time is compared
+ * as a share of job time. Medians of rounds may not be worse than
+ * baseline by more than tolerance, and retained heap of window-major
+ * cases may not grow with time line length.
+ *
+ * It is not a unit test and is run only by "perf" Maven profile in a
+ * separate JVM: mvn -Pperf verify. By default it forks H2 TCP server
+ * with in-memory database in MySQL mode, so database tables are not in
+ * measured heap. With "perf.updateBaseline=true" measured values are
+ * written as the new baseline instead of being checked. Baseline
+ * records Java version, it has to be recorded again on other Java.
+ *
+ * @author Aleksandr Ivanov
+ */
+public class ThroughputRegressionSuite {
+    private static final int[] USERS_QUANTITIES = {10, 40};
+    private static final int[] RANGE_HOURS = {24, 96};
+    private static final String[] TABLES = {
+        "USER_STATS", "TRAFFIC_DAILY", "TRAFFIC", "USERS"
+    };
+    private static final String SEED = "20150101";
+    private static final String JAVA_VERSION_KEY = "java.specification.version";
+
+    /** Metrics which may not fall below baseline, others may not grow. */
+    private static final List<String> THROUGHPUT_METRICS = Arrays.asList(
+            "relativeThroughput", "calibratedThroughput");
+
+    /** Heap growth below it is not a regression for any tolerance. */
+    private static final long HEAP_SLACK_BYTES = 4L << 20;
+
+    /** GC share growth below it is not a regression for any tolerance. */
+    private static final double GC_SHARE_SLACK = 0.05;
+
+    /** Measured time of one iteration, short cases are repeated. */
+    private static final long MIN_ITERATION_NANOS = 1_000_000_000L;
+
+    /** Measured time of CPU calibration loop of every round. */
+    private static final long CALIBRATION_NANOS = 250_000_000L;
+    private static final int CALIBRATION_VALUES = 4096;
+    private static final SimpleDateFormat viewDateFormat =
+            new SimpleDateFormat("dd.MM.yyyy HH:mm");
+    private String jdbcUrl;
+    private final String dbUserName;
+    private final String dbPassword;
+    private final File baselineFile;
+    private final double tolerance;
+    private final int iterations;
+    private final boolean isBaselineUpdate;
+    private final Map<String, Double> slacks = new HashMap<>();
+    private Process databaseServer;
+
+    /** Sorted values sum, it keeps calibration loop from being removed. */
+    private long calibrationChecksum;
+
+    private ThroughputRegressionSuite() {
+        String jdbcUrlProperty = System.getProperty("perf.jdbcUrl", "");
+
+        this.jdbcUrl = jdbcUrlProperty.isEmpty() ? null : jdbcUrlProperty;
+        this.dbUserName = System.getProperty("perf.dbUserName", "sa");
+        this.dbPassword = System.getProperty("perf.dbPassword", "");
+        this.baselineFile = new File(System.getProperty("perf.baseline",
+                "src/test/resources/perf/throughput-baseline.properties"));
+        this.tolerance = Double.parseDouble(
+                System.getProperty("perf.tolerance", "0.5"));
+        this.iterations = Integer.getInteger("perf.iterations", 5);
+        this.isBaselineUpdate = Boolean.getBoolean("perf.updateBaseline");
+    }
+
+    public static void main(String[] args) throws Exception {
+        ThroughputRegressionSuite suite = new ThroughputRegressionSuite();
+        List<String> regressions;
+
+        try {
+            regressions = suite.run();
+        } finally {
+            suite.stopDatabaseServer();
+        }
+        if (!regressions.isEmpty()) {
+            for (String regression : regressions) {
+                System.err.println("Throughput regression: " + regression);
+            }
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs warm up and rounds of all matrix cases, measures retained
+     * heap and checks or updates baseline.
+     *
+     * @return descriptions of cases which are worse than baseline or
+     * have no baseline
+     */
+    private List<String> run() throws Exception {
+        Properties baseline = isBaselineUpdate
+                ? new Properties() : loadBaseline();
+        String javaVersion = System.getProperty(JAVA_VERSION_KEY);
+        List<Case> cases = new ArrayList<>();
+        List<String> regressions = new ArrayList<>();
+
+        if (!isBaselineUpdate
+                && !javaVersion.equals(baseline.getProperty(JAVA_VERSION_KEY))) {
+            regressions.add("baseline is recorded on Java "
+                    + baseline.getProperty(JAVA_VERSION_KEY) + ", not on "
+                    + javaVersion + ", record it with "
+                    + "-Dperf.updateBaseline=true");
+            return regressions;
+        }
+        if (jdbcUrl == null) {
+            jdbcUrl = startDatabaseServer();
+        }
+        for (int usersQuantity : USERS_QUANTITIES) {
+            for (int rangeHours : RANGE_HOURS) {
+                for (StorageMode storageMode : StorageMode.values()) {
+                    for (GenerationOrder order : GenerationOrder.values()) {
+                        cases.add(new Case(usersQuantity, rangeHours,
+                                storageMode, order));
+                    }
+                }
+            }
+        }
+
+        Case reference = cases.get(0);
+        List<Double> referencePeaks = new ArrayList<>();
+
+        /* the first round warms up JIT and driver and is not recorded */
+        for (int i = -1; i < iterations; i++) {
+            double loopsPerSecond = measureCalibration();
+            double[] referenceRun = null;
+
+            for (Case matrixCase : cases) {
+                double[] run = runIteration(matrixCase);
+
+                if (matrixCase == reference) {
+                    referenceRun = run;
+                }
+                if (i < 0) {
+                    continue;
+                }
+                matrixCase.add("relativeThroughput", run[0] / referenceRun[0]);
+                matrixCase.add("gcShare", run[1]);
+                matrixCase.add("peakHeap", run[2] / referenceRun[2]);
+                if (matrixCase == reference) {
+                    matrixCase.add("calibratedThroughput",
+                            run[0] / loopsPerSecond);
+                    referencePeaks.add(run[2]);
+                }
+            }
+        }
+
+        double referenceRetained = Math.max(1, measureRetainedHeap(reference));
+
+        for (Case matrixCase : cases) {
+            matrixCase.add("retainedHeap", (matrixCase == reference) ? 1
+                    : measureRetainedHeap(matrixCase) / referenceRetained);
+        }
+        slacks.put("gcShare", GC_SHARE_SLACK);
+        slacks.put("peakHeap", HEAP_SLACK_BYTES / getMedian(referencePeaks));
+        slacks.put("retainedHeap", HEAP_SLACK_BYTES / referenceRetained);
+
+        for (Case matrixCase : cases) {
+            for (String metric : matrixCase.runs.keySet()) {
+                if (isBaselineUpdate) {
+                    updateBaseline(baseline, matrixCase, metric);
+                } else {
+                    checkBaseline(baseline, matrixCase, metric, regressions);
+                }
+            }
+            System.out.println(matrixCase);
+        }
+        checkWindowMajorHeap(cases, regressions);
+        if (isBaselineUpdate) {
+            baseline.setProperty(JAVA_VERSION_KEY, javaVersion);
+            storeBaseline(baseline);
+        }
+        return regressions;
+    }
+
+    /**
+     * Generates and stores traffic for one matrix case on empty schema.
+     * Short cases are repeated till iteration takes at least
+     * {@link #MIN_ITERATION_NANOS}, schema cleaning between repeats is
+     * not measured.
+     *
+     * @return rows per second, share of GC time in job time and the
+     * greatest peak heap bytes of repeats
+     */
+    private double[] runIteration(Case matrixCase) throws Exception {
+        Controller controller = Controller.getInstance();
+        long rows = 0;
+        long nanos = 0;
+        long gcMillis = 0;
+        long peakHeapBytes = 0;
+
+        controller.setParameters(getJobParameters(matrixCase));
+        while (nanos < MIN_ITERATION_NANOS) {
+            dropTables();
+
+            UserDao userDao = new UserDao(jdbcUrl, dbUserName, dbPassword,
+                    matrixCase.storageMode);
+
+            System.gc();
+            resetPeakHeap();
+
+            long gcMillisBefore = getGcMillis();
+            long startNanos = System.nanoTime();
+
+            rows += controller.storeTrafficPerMinute(userDao);
+            nanos += System.nanoTime() - startNanos;
+            gcMillis += getGcMillis() - gcMillisBefore;
+            peakHeapBytes = Math.max(peakHeapBytes, getPeakHeap());
+        }
+        return new double[] {
+            rows / (nanos / 1e9), gcMillis / (nanos / 1e6), peakHeapBytes
+        };
+    }
+
+    /**
+     * Sorts the same pseudo-random values again and again for
+     * {@link #CALIBRATION_NANOS}. It measures machine speed in this
+     * round without generator and database code.
+     *
+     * @return calibration loops per second
+     */
+    private double measureCalibration() {
+        Random random = new Random(Long.parseLong(SEED));
+        int[] source = new int[CALIBRATION_VALUES];
+        long loops = 0;
+        long startNanos;
+        long nanos;
+
+        for (int i = 0; i < source.length; i++) {
+            source[i] = random.nextInt();
+        }
+        startNanos = System.nanoTime();
+        do {
+            int[] values = source.clone();
+
+            Arrays.sort(values);
+            calibrationChecksum += values[CALIBRATION_VALUES / 2];
+            loops++;
+            nanos = System.nanoTime() - startNanos;
+        } while (nanos < CALIBRATION_NANOS);
+        return loops / (nanos / 1e9);
+    }
+
+    /**
+     * Runs case once more, not timed, with full GC after every stored
+     * user. State left by previous case may be freed during the job,
+     * so growth is counted from the lowest heap used.
+     *
+     * @return the greatest heap bytes used after GC above the lowest one
+     */
+    private long measureRetainedHeap(Case matrixCase) throws Exception {
+        Controller controller = Controller.getInstance();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        dropTables();
+        controller.setParameters(getJobParameters(matrixCase));
+        System.gc();
+
+        long[] usedRange = {memory.getHeapMemoryUsage().getUsed(), 0};
+
+        controller.setProgressListener(rows -> {
+            System.gc();
+
+            long used = memory.getHeapMemoryUsage().getUsed();
+
+            usedRange[0] = Math.min(usedRange[0], used);
+            usedRange[1] = Math.max(usedRange[1], used);
+        });
+        try {
+            controller.storeTrafficPerMinute(new UserDao(jdbcUrl, dbUserName,
+                    dbPassword, matrixCase.storageMode));
+        } finally {
+            controller.setProgressListener(null);
+        }
+        return Math.max(0, usedRange[1] - usedRange[0]);
+    }
+
+    private Map<String, String[]> getJobParameters(Case matrixCase)
+            throws ParseException {
+        Date startDate = viewDateFormat.parse("01.01.2015 00:00");
+        Date endDate = new Date(startDate.getTime()
+                + matrixCase.rangeHours * 3_600_000L);
+        Map<String, String[]> parameters = new HashMap<>();
+
+        parameters.put("hostName", new String[] {"embedded"});
+        parameters.put("portName", new String[] {"0"});
+        parameters.put("dbName", new String[] {"perf"});
+        parameters.put("dbUserName", new String[] {dbUserName});
+        parameters.put("dbPassword", new String[] {dbPassword});
+        parameters.put("usersQuantity",
+                new String[] {String.valueOf(matrixCase.usersQuantity)});
+        parameters.put("startDate",
+                new String[] {viewDateFormat.format(startDate)});
+        parameters.put("endDate",
+                new String[] {viewDateFormat.format(endDate)});
+        parameters.put("storageMode",
+                new String[] {matrixCase.storageMode.name()});
+        parameters.put("generationOrder",
+                new String[] {matrixCase.order.name()});
+        parameters.put("seed", new String[] {SEED});
+        return parameters;
+    }
+
+    /**
+     * Compares median of case metric with baseline within tolerance
+     * and adds failed comparison to regressions.
+     */
+    private void checkBaseline(Properties baseline, Case matrixCase,
+            String metric, List<String> regressions) {
+        String key = matrixCase.name + "." + metric;
+        String expectedString = baseline.getProperty(key);
+        double median = getMedian(matrixCase.runs.get(metric));
+
+        if (expectedString == null) {
+            regressions.add(key + " has no baseline, record it with "
+                    + "-Dperf.updateBaseline=true");
+            return;
+        }
+
+        double expected = Double.parseDouble(expectedString);
+        boolean isWorse = THROUGHPUT_METRICS.contains(metric)
+                ? median < expected * (1 - tolerance)
+                : median > expected * (1 + tolerance) + slacks.get(metric);
+
+        if (isWorse) {
+            regressions.add(String.format(Locale.ROOT, "%s is %.3f, "
+                    + "baseline %s", key, median, expectedString));
+        }
+    }
+
+    /**
+     * Window-major order keeps one window of users traffic, so its
+     * retained heap may not grow with time line length.
+     */
+    private void checkWindowMajorHeap(List<Case> cases,
+            List<String> regressions) {
+        Map<String, Double> shortestRangeHeaps = new HashMap<>();
+
+        for (Case matrixCase : cases) {
+            if (matrixCase.order != GenerationOrder.WINDOW_MAJOR) {
+                continue;
+            }
+
+            String key = matrixCase.usersQuantity + "users."
+                    + matrixCase.storageMode;
+            double retainedHeap =
+                    matrixCase.runs.get("retainedHeap").get(0);
+
+            if (matrixCase.rangeHours == RANGE_HOURS[0]) {
+                shortestRangeHeaps.put(key, retainedHeap);
+            } else if (retainedHeap > shortestRangeHeaps.get(key)
+                    * (1 + tolerance) + slacks.get("retainedHeap")) {
+                regressions.add(String.format(Locale.ROOT, "%s retained "
+                        + "heap %.3f grows with time line from %.3f of %dh",
+                        matrixCase.name, retainedHeap,
+                        shortestRangeHeaps.get(key), RANGE_HOURS[0]));
+            }
+        }
+    }
+
+    /**
+     * Records conservative baseline of case metric: the lowest round
+     * throughput or the greatest round cost, so medians of later runs
+     * stay within it.
+     */
+    private void updateBaseline(Properties baseline, Case matrixCase,
+            String metric) {
+        List<Double> runs = matrixCase.runs.get(metric);
+
+        baseline.setProperty(matrixCase.name + "." + metric,
+                String.format(Locale.ROOT, "%.3f",
+                        THROUGHPUT_METRICS.contains(metric)
+                        ? Collections.min(runs) : Collections.max(runs)));
+    }
+
+    private static double getMedian(List<Double> values) {
+        List<Double> sorted = new ArrayList<>(values);
+
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+
+    /**
+     * Forks H2 TCP server JVM with this JVM class path and waits till
+     * it listens.
+     *
+     * @return JDBC URL of in-memory database on the server
+     */
+    private String startDatabaseServer() throws IOException {
+        int port;
+
+        try (ServerSocket freePort = new ServerSocket(0)) {
+            port = freePort.getLocalPort();
+        }
+
+        String java = System.getProperty("java.home") + File.separator
+                + "bin" + File.separator + "java";
+
+        databaseServer = new ProcessBuilder(java, "-cp",
+                System.getProperty("java.class.path"), "org.h2.tools.Server",
+                "-tcp", "-tcpPort", String.valueOf(port), "-ifNotExists")
+                .redirectErrorStream(true).start();
+
+        BufferedReader output = new BufferedReader(new InputStreamReader(
+                databaseServer.getInputStream(), StandardCharsets.UTF_8));
+        String line = output.readLine();
+
+        if (line == null || !line.startsWith("TCP server running")) {
+            throw new IOException("database server on port " + port
+                    + " didn't start: " + line);
+        }
+        return "jdbc:h2:tcp://127.0.0.1:" + port + "/mem:perf;MODE=MySQL;"
+                + "DB_CLOSE_DELAY=-1;NON_KEYWORDS=MINUTE,DAY";
+    }
+
+    private void stopDatabaseServer() {
+        if (databaseServer != null) {
+            databaseServer.destroyForcibly();
+        }
+    }
+
+    private void dropTables() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(
+                jdbcUrl, dbUserName, dbPassword);
+             Statement statement = connection.createStatement()) {
+
+            for (String table : TABLES) {
+                statement.execute("DROP TABLE IF EXISTS " + table + ";");
+            }
+        }
+    }
+
+    private void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Sums peak usage of heap pools since the last reset. Pools reach
+     * their peaks at different moments, so it is an upper bound.
+     */
+    private long getPeakHeap() {
+        long bytes = 0;
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                bytes += pool.getPeakUsage().getUsed();
+            }
+        }
+        return bytes;
+    }
+
+    private long getGcMillis() {
+        long millis = 0;
+
+        for (GarbageCollectorMXBean collector
+                : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private Properties loadBaseline() throws IOException {
+        Properties baseline = new Properties();
+
+        if (baselineFile.exists()) {
+            try (InputStream in = new FileInputStream(baselineFile)) {
+                baseline.load(in);
+            }
+        }
+        return baseline;
+    }
+
+    private void storeBaseline(Properties baseline) throws IOException {
+        try (OutputStream out = new FileOutputStream(baselineFile)) {
+            baseline.store(out, "ThroughputRegressionSuite baseline, "
+                    + "relative to " + USERS_QUANTITIES[0] + "users."
+                    + RANGE_HOURS[0] + "h.PER_MINUTE.USER_MAJOR. Record it "
+                    + "again when Java version changes");
+        }
+    }
+
+    /**
+     * Matrix case with measured metric values of rounds.
+     */
+    private static final class Case {
+        private final String name;
+        private final int usersQuantity;
+        private final int rangeHours;
+        private final StorageMode storageMode;
+        private final GenerationOrder order;
+        private final Map<String, List<Double>> runs = new LinkedHashMap<>();
+
+        private Case(int usersQuantity, int rangeHours,
+                StorageMode storageMode, GenerationOrder order) {
+            this.name = usersQuantity + "users." + rangeHours + "h."
+                    + storageMode + "." + order;
+            this.usersQuantity = usersQuantity;
+            this.rangeHours = rangeHours;
+            this.storageMode = storageMode;
+            this.order = order;
+        }
+
+        private void add(String metric, double value) {
+            if (!runs.containsKey(metric)) {
+                runs.put(metric, new ArrayList<Double>());
+            }
+            runs.get(metric).add(value);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(name);
+
+            for (Map.Entry<String, List<Double>> metric : runs.entrySet()) {
+                builder.append(String.format(Locale.ROOT, " %s=%.3f",
+                        metric.getKey(), getMedian(metric.getValue())));
+            }
+            return builder.toString();
+        }
+    }
+}
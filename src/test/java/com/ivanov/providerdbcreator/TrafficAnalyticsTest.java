@@ -0,0 +1,244 @@
+package com.ivanov.providerdbcreator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Analytics answers match SQL over traffic stored to embedded
+ * database in both storage modes.
+ *
+ * @author Aleksandr Ivanov
+ */
+public class TrafficAnalyticsTest {
+    private static final double[] PERCENTS = {0, 50, 95, 99, 100};
+    private static final int TOP_USERS = 2;
+    private final TestDatabase database = new TestDatabase("analytics");
+
+    @Before
+    public void dropTables() throws SQLException {
+        database.dropTables();
+    }
+
+    /**
+     * Top quantity greater than users quantity returns all users of
+     * every city by load.
+     */
+    @Test
+    public void topUsersAreLimitedByUsersQuantity() {
+        TrafficAnalytics analytics = new TrafficAnalytics.Builder()
+                .addUser(1, "A B", "Moscow")
+                .addUser(2, "C D", "Moscow")
+                .addUser(3, "E F", "Kiev")
+                .addTraffic(1, new Date(0L), 10)
+                .addTraffic(2, new Date(0L), 20)
+                .addTraffic(3, new Date(60000L), 30)
+                .build();
+        Map<String, List<TrafficAnalytics.UserLoad>> topUsers =
+                analytics.getTopUsersByCity(Integer.MAX_VALUE);
+
+        assertEquals(2, topUsers.size());
+        assertEquals(2, topUsers.get("Moscow").size());
+        assertEquals(2, topUsers.get("Moscow").get(0).getUserId());
+        assertEquals(1, topUsers.get("Kiev").size());
+    }
+
+    /**
+     * Percentiles are nearest-rank loads of sorted TRAFFIC rows.
+     */
+    @Test
+    public void percentilesMatchSortedRows() throws Exception {
+        database.runJob(database.getJobParameters(StorageMode.PER_MINUTE,
+                "01.01.2015 00:00", "01.01.2015 12:00"));
+
+        List<Long> loads = new ArrayList<>();
+
+        for (String row : database.readRows("SELECT LOADED_BYTES "
+                + "FROM TRAFFIC ORDER BY LOADED_BYTES;")) {
+            loads.add(Long.parseLong(row));
+        }
+
+        Map<Double, Long> expected = new LinkedHashMap<>();
+
+        for (double percent : PERCENTS) {
+            int rank = (int) Math.ceil(percent / 100 * loads.size());
+
+            expected.put(percent, loads.get(Math.max(0, rank - 1)));
+        }
+        assertEquals(TestDatabase.USERS_QUANTITY * 720, loads.size());
+        assertEquals(expected, database.getUserDao(StorageMode.PER_MINUTE)
+                .loadTrafficAnalytics().getLoadPercentiles(PERCENTS));
+    }
+
+    /**
+     * Top users of every city match SQL sums of their traffic.
+     */
+    @Test
+    public void topUsersMatchGroupedSums() throws Exception {
+        Map<String, String[]> parameters = database.getJobParameters(
+                StorageMode.PER_MINUTE, "01.01.2015 00:00", "01.01.2015 02:00");
+
+        parameters.put("usersQuantity", new String[] {"30"});
+        database.runJob(parameters);
+
+        Map<String, List<String>> expected = new LinkedHashMap<>();
+
+        for (String row : database.readRows("SELECT U.CITY, U.USER_ID, "
+                + "SUM(T.LOADED_BYTES) FROM TRAFFIC T "
+                + "JOIN USERS U ON U.USER_ID = T.USER_ID "
+                + "GROUP BY U.CITY, U.USER_ID "
+                + "ORDER BY U.CITY, SUM(T.LOADED_BYTES) DESC;")) {
+            String city = row.substring(0, row.indexOf('|'));
+
+            if (!expected.containsKey(city)) {
+                expected.put(city, new ArrayList<String>());
+            }
+            if (expected.get(city).size() < TOP_USERS) {
+                expected.get(city).add(row);
+            }
+        }
+
+        TrafficAnalytics analytics = database.getUserDao(
+                StorageMode.PER_MINUTE).loadTrafficAnalytics();
+
+        assertTrue(expected.size() > 1);
+        assertEquals(expected, describeTopUsers(analytics));
+    }
+
+    /**
+     * Traffic of the same job loaded from TRAFFIC_DAILY gives the same
+     * answers as loaded from TRAFFIC.
+     */
+    @Test
+    public void dailyBlobLoadMatchesPerMinuteLoad() throws Exception {
+        for (StorageMode storageMode : StorageMode.values()) {
+            database.runJob(database.getJobParameters(storageMode,
+                    "01.01.2015 20:00", "02.01.2015 04:00"));
+        }
+
+        TrafficAnalytics perMinute = database.getUserDao(
+                StorageMode.PER_MINUTE).loadTrafficAnalytics();
+        TrafficAnalytics dailyBlob = database.getUserDao(
+                StorageMode.DAILY_BLOB).loadTrafficAnalytics();
+
+        assertEquals(TestDatabase.USERS_QUANTITY * 480,
+                dailyBlob.getRowsCount());
+        assertEquals(perMinute.getRowsCount(), dailyBlob.getRowsCount());
+        assertEquals(perMinute.getLoadPercentiles(PERCENTS),
+                dailyBlob.getLoadPercentiles(PERCENTS));
+        assertEquals(describeTopUsers(perMinute),
+                describeTopUsers(dailyBlob));
+        assertEquals(describePeaks(perMinute), describePeaks(dailyBlob));
+    }
+
+    /**
+     * Arrays grow by doubling up to the greatest array length and
+     * fail with clear exception after it instead of int overflow.
+     */
+    @Test
+    public void capacityGrowthIsCappedByArrayLength() {
+        assertEquals(2048, TrafficAnalytics.Builder.getGrownCapacity(1024));
+        assertEquals(TrafficAnalytics.MAX_ROWS,
+                TrafficAnalytics.Builder.getGrownCapacity(1 << 30));
+        try {
+            TrafficAnalytics.Builder.getGrownCapacity(
+                    TrafficAnalytics.MAX_ROWS);
+            fail("rows above array length are accepted");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("rows"));
+        }
+    }
+
+    /**
+     * Peak minutes match SQL sums per minute and days without traffic
+     * have no peak.
+     */
+    @Test
+    public void peakMinutesSkipDaysWithoutTraffic() throws Exception {
+        database.runJob(database.getJobParameters(StorageMode.PER_MINUTE,
+                "01.01.2015 00:00", "01.01.2015 06:00"));
+
+        Map<String, String[]> laterJob = database.getJobParameters(
+                StorageMode.PER_MINUTE, "03.01.2015 12:00", "03.01.2015 18:00");
+
+        laterJob.put("seed", new String[] {TestDatabase.SEED + "1"});
+        database.runJob(laterJob);
+
+        SortedMap<Date, Long> expectedPeaks = new TreeMap<>();
+
+        try (Connection connection = database.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT MINUTE, "
+                     + "SUM(LOADED_BYTES) FROM TRAFFIC GROUP BY MINUTE;")) {
+            while (rs.next()) {
+                Date day = TrafficCodec.getDayStart(rs.getTimestamp(1));
+                Long peak = expectedPeaks.get(day);
+
+                if (peak == null || peak < rs.getLong(2)) {
+                    expectedPeaks.put(day, rs.getLong(2));
+                }
+            }
+        }
+
+        SortedMap<Date, Long> peaks = new TreeMap<>();
+        TrafficAnalytics analytics = database.getUserDao(
+                StorageMode.PER_MINUTE).loadTrafficAnalytics();
+
+        for (Map.Entry<Date, TrafficAnalytics.PeakMinute> entry
+                : analytics.getPeakMinutesByDay().entrySet()) {
+            peaks.put(entry.getKey(), entry.getValue().getLoadedBytes());
+        }
+        assertEquals(2, expectedPeaks.size());
+        assertEquals(expectedPeaks, peaks);
+    }
+
+    /**
+     * @return Map of city - "city|user ID|loaded bytes" of its top
+     * users
+     */
+    private Map<String, List<String>> describeTopUsers(
+            TrafficAnalytics analytics) {
+        Map<String, List<String>> topUsers = new LinkedHashMap<>();
+
+        for (Map.Entry<String, List<TrafficAnalytics.UserLoad>> entry
+                : analytics.getTopUsersByCity(TOP_USERS).entrySet()) {
+            List<String> cityTop = new ArrayList<>();
+
+            for (TrafficAnalytics.UserLoad user : entry.getValue()) {
+                cityTop.add(user.getCity() + "|" + user.getUserId() + "|"
+                        + user.getLoadedBytes());
+            }
+            topUsers.put(entry.getKey(), cityTop);
+        }
+        return topUsers;
+    }
+
+    /**
+     * @return Map of day - "minute|loaded bytes" of its peak minute
+     */
+    private Map<Date, String> describePeaks(TrafficAnalytics analytics) {
+        Map<Date, String> peaks = new TreeMap<>();
+
+        for (Map.Entry<Date, TrafficAnalytics.PeakMinute> entry
+                : analytics.getPeakMinutesByDay().entrySet()) {
+            peaks.put(entry.getKey(), entry.getValue().getMinute().getTime()
+                    + "|" + entry.getValue().getLoadedBytes());
+        }
+        return peaks;
+    }
+}
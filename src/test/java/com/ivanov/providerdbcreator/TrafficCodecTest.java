@@ -0,0 +1,66 @@
+package com.ivanov.providerdbcreator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * Round trip of daily traffic BLOB format.
+ *
+ * @author Aleksandr Ivanov
+ */
+public class TrafficCodecTest {
+    private static final int[] MINUTE_OFFSETS = {0, 1, 2, 90, 91, 1439};
+    private static final int[] LOADS =
+        {0, Integer.MAX_VALUE, 0, 1, Integer.MAX_VALUE, 7};
+    private final SimpleDateFormat viewDateFormat =
+            new SimpleDateFormat("dd.MM.yyyy HH:mm");
+
+    /**
+     * Traffic with gaps, zero and extreme loads decodes to the same
+     * minutes.
+     */
+    @Test
+    public void decodesEncodedTraffic() throws Exception {
+        Date firstMinute = viewDateFormat.parse("01.01.2015 00:00");
+        SortedMap<Date, Integer> traffic = getTraffic(firstMinute);
+
+        assertEquals(traffic, TrafficCodec.decode(firstMinute,
+                TrafficCodec.encode(firstMinute, traffic)));
+    }
+
+    @Test
+    public void decodesEncodedEmptyTraffic() throws Exception {
+        Date firstMinute = viewDateFormat.parse("01.01.2015 00:00");
+
+        assertTrue(TrafficCodec.decode(firstMinute, TrafficCodec.encode(
+                firstMinute, new TreeMap<Date, Integer>())).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedTraffic() throws Exception {
+        Date firstMinute = viewDateFormat.parse("01.01.2015 00:00");
+        byte[] encoded =
+                TrafficCodec.encode(firstMinute, getTraffic(firstMinute));
+
+        TrafficCodec.decode(firstMinute,
+                Arrays.copyOf(encoded, encoded.length - 1));
+    }
+
+    private SortedMap<Date, Integer> getTraffic(Date firstMinute) {
+        SortedMap<Date, Integer> traffic = new TreeMap<>();
+
+        for (int i = 0; i < MINUTE_OFFSETS.length; i++) {
+            traffic.put(new Date(firstMinute.getTime()
+                    + MINUTE_OFFSETS[i] * 60000L), LOADS[i]);
+        }
+        return traffic;
+    }
+}
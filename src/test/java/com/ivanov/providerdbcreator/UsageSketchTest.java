@@ -0,0 +1,167 @@
+package com.ivanov.providerdbcreator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Bucket math, quantile accuracy, merging and stored bytes of usage
+ * sketch.
+ *
+ * @author Aleksandr Ivanov
+ */
+public class UsageSketchTest {
+    private static final double RELATIVE_ERROR = 0.016;
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99, 0.999};
+
+    /**
+     * Loads below 64 have own buckets, so their quantiles are exact.
+     */
+    @Test
+    public void smallLoadsAreExact() {
+        UsageSketch sketch = new UsageSketch();
+
+        for (int load = 0; load < 64; load++) {
+            sketch.add(new Date(load * 60000L), load);
+        }
+        for (int load = 0; load < 64; load++) {
+            assertEquals(load, sketch.getQuantile((load + 1) / 64.0));
+        }
+    }
+
+    /**
+     * Every load falls to bucket whose middle is within 1.6% of it, on
+     * power of two bounds too.
+     */
+    @Test
+    public void bucketMiddleIsCloseToLoad() {
+        List<Integer> loads = new ArrayList<>();
+
+        for (int load = 0; load < 100_000; load++) {
+            loads.add(load);
+        }
+        for (int bit = 6; bit < 31; bit++) {
+            loads.add((1 << bit) - 1);
+            loads.add(1 << bit);
+            loads.add((1 << bit) + 1);
+        }
+        loads.add(Integer.MAX_VALUE - 1);
+
+        for (int load : loads) {
+            UsageSketch sketch = new UsageSketch();
+
+            /* greater peak keeps bucket middle from being capped */
+            sketch.add(new Date(0L), load);
+            sketch.add(new Date(60000L), Integer.MAX_VALUE);
+
+            int middle = sketch.getQuantile(0.5);
+
+            assertTrue(load + " is approximated by " + middle,
+                    Math.abs(middle - load) <= load * RELATIVE_ERROR);
+        }
+    }
+
+    @Test
+    public void quantilesAreWithinRelativeError() {
+        Random random = new Random(20150101L);
+        UsageSketch sketch = new UsageSketch();
+        int[] loads = new int[100_000];
+
+        for (int i = 0; i < loads.length; i++) {
+            /* log-uniform loads from 1 byte to 1 GB */
+            loads[i] = (int) Math.pow(2, random.nextDouble() * 30);
+            sketch.add(new Date(i * 60000L), loads[i]);
+        }
+        Arrays.sort(loads);
+        for (double quantile : QUANTILES) {
+            int exact = loads[(int) Math.ceil(quantile * loads.length) - 1];
+            int approximate = sketch.getQuantile(quantile);
+
+            assertTrue(quantile + " quantile " + exact + " is approximated by "
+                    + approximate, Math.abs(approximate - exact)
+                    <= exact * RELATIVE_ERROR);
+        }
+        assertEquals(loads[loads.length - 1], sketch.getPeakBytes());
+    }
+
+    @Test
+    public void mergedSketchEqualsSketchOfAllLoads() {
+        Random random = new Random(20150101L);
+        UsageSketch whole = new UsageSketch();
+        UsageSketch first = new UsageSketch();
+        UsageSketch second = new UsageSketch();
+
+        for (int i = 0; i < 10_000; i++) {
+            Date minute = new Date(i * 60000L);
+            int load = (i % 7 == 0) ? 0 : random.nextInt(100_000_000);
+
+            whole.add(minute, load);
+            (i < 5_000 ? first : second).add(minute, load);
+        }
+        first.merge(second);
+        assertArrayEquals(whole.toBytes(), first.toBytes());
+        assertEquals(whole.getActiveMinutes(), first.getActiveMinutes());
+        assertEquals(whole.getPeakMinute(), first.getPeakMinute());
+    }
+
+    @Test
+    public void readsStoredBytes() {
+        Random random = new Random(20150101L);
+        UsageSketch sketch = new UsageSketch();
+
+        for (int i = 0; i < 1_000; i++) {
+            sketch.add(new Date(i * 60000L), random.nextInt());
+        }
+
+        UsageSketch restored = UsageSketch.fromBytes(sketch.toBytes());
+
+        assertArrayEquals(sketch.toBytes(), restored.toBytes());
+        assertEquals(sketch.getTotalBytes(), restored.getTotalBytes());
+        assertEquals(sketch.getMinutesCount(), restored.getMinutesCount());
+        assertEquals(sketch.getActiveMinutes(), restored.getActiveMinutes());
+        assertEquals(sketch.getPeakMinute(), restored.getPeakMinute());
+        assertEquals(sketch.getPeakBytes(), restored.getPeakBytes());
+        for (double quantile : QUANTILES) {
+            assertEquals(sketch.getQuantile(quantile),
+                    restored.getQuantile(quantile));
+        }
+    }
+
+    @Test
+    public void readsStoredEmptySketch() {
+        UsageSketch restored =
+                UsageSketch.fromBytes(new UsageSketch().toBytes());
+
+        assertEquals(0, restored.getMinutesCount());
+        assertEquals(0, restored.getQuantile(0.5));
+        assertNull(restored.getPeakMinute());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedBytes() {
+        UsageSketch sketch = new UsageSketch();
+
+        sketch.add(new Date(0L), 1_000);
+
+        byte[] bytes = sketch.toBytes();
+
+        UsageSketch.fromBytes(Arrays.copyOf(bytes, bytes.length - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownFormat() {
+        byte[] bytes = new UsageSketch().toBytes();
+
+        bytes[0]++;
+        UsageSketch.fromBytes(bytes);
+    }
+}
@@ -0,0 +1,382 @@
+package com.ivanov.providerdbcreator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Jobs run by Controller and stored by UserDao to embedded database in
+ * both storage modes: traffic is read back as stored rows,
+ * window-major order stores the same rows as user-major, repeated
+ * jobs don't duplicate rows, stored days are merged, seeded extension
+ * is reproducible and traffic tables of previous versions get their
+ * unique keys.
+ *
+ * @author Aleksandr Ivanov
+ */
+public class UserDaoTest {
+    private static final String TRAFFIC_ROWS_QUERY = "SELECT USER_ID, MINUTE, "
+            + "LOADED_BYTES FROM TRAFFIC ORDER BY USER_ID, MINUTE;";
+    private static final String DAILY_ROWS_QUERY = "SELECT USER_ID, DAY, "
+            + "FIRST_MINUTE, LAST_MINUTE, ENCODED_LOADS FROM TRAFFIC_DAILY "
+            + "ORDER BY USER_ID, DAY;";
+    private static final String STATS_ROWS_QUERY = "SELECT * FROM USER_STATS "
+            + "ORDER BY USER_ID;";
+    private final TestDatabase database = new TestDatabase("userdao");
+    private final SimpleDateFormat viewDateFormat =
+            new SimpleDateFormat("dd.MM.yyyy HH:mm");
+
+    @Before
+    public void dropTables() throws SQLException {
+        database.dropTables();
+    }
+
+    /**
+     * The same seeded job stored in both modes is read back as stored
+     * per minute rows, for the whole time line over midnight and for
+     * its part.
+     */
+    @Test
+    public void readsStoredTrafficInBothModes() throws Exception {
+        for (StorageMode storageMode : StorageMode.values()) {
+            database.runJob(database.getJobParameters(storageMode,
+                    "01.01.2015 22:00", "02.01.2015 02:00"));
+        }
+
+        Date[][] ranges = {
+            {viewDateFormat.parse("01.01.2015 22:00"),
+                viewDateFormat.parse("02.01.2015 02:00")},
+            {viewDateFormat.parse("01.01.2015 23:30"),
+                viewDateFormat.parse("02.01.2015 00:30")}
+        };
+        List<String> userIds =
+                database.readRows("SELECT USER_ID FROM USERS;");
+
+        assertEquals(TestDatabase.USERS_QUANTITY, userIds.size());
+        for (String userId : userIds) {
+            for (Date[] range : ranges) {
+                SortedMap<Date, Integer> expected = readTrafficRows(
+                        Integer.parseInt(userId), range[0], range[1]);
+
+                assertFalse(expected.isEmpty());
+                for (StorageMode storageMode : StorageMode.values()) {
+                    assertEquals(storageMode + " traffic of user " + userId,
+                            expected, database.getUserDao(storageMode)
+                            .readUserTraffic(Integer.parseInt(userId),
+                                    range[0], range[1]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Window-major order stores the same rows as user-major order for
+     * the same seeds. Extension crosses midnight and the user stored
+     * by the second job starts in the middle of its window.
+     */
+    @Test
+    public void windowMajorStoresSameRowsAsUserMajor() throws Exception {
+        for (StorageMode storageMode : StorageMode.values()) {
+            String trafficQuery = (storageMode == StorageMode.DAILY_BLOB)
+                    ? DAILY_ROWS_QUERY : TRAFFIC_ROWS_QUERY;
+            List<String> userMajorRows = storeWithExtension(storageMode,
+                    GenerationOrder.USER_MAJOR, trafficQuery, STATS_ROWS_QUERY);
+            List<String> windowMajorRows = storeWithExtension(storageMode,
+                    GenerationOrder.WINDOW_MAJOR, trafficQuery,
+                    STATS_ROWS_QUERY);
+
+            assertEquals(TestDatabase.USERS_QUANTITY + 1,
+                    database.countRows("USER_STATS"));
+            assertEquals(storageMode + " rows", userMajorRows,
+                    windowMajorRows);
+        }
+    }
+
+    /**
+     * Cancelled job stops inside traffic of the first user, after its
+     * first day batch, and rolls back the user transaction.
+     */
+    @Test
+    public void cancelledJobRollsBackUserTraffic() throws Exception {
+        Controller controller = Controller.getInstance();
+        AtomicInteger checks = new AtomicInteger();
+
+        controller.setParameters(database.getJobParameters(
+                StorageMode.PER_MINUTE, "01.01.2015 00:00", "03.01.2015 00:00"));
+        controller.setCancellationCheck(() -> checks.incrementAndGet() > 1);
+        try {
+            controller.storeTrafficPerMinute(
+                    database.getUserDao(StorageMode.PER_MINUTE));
+            fail("cancelled job is finished");
+        } catch (CancellationException e) {
+            assertEquals(2, checks.get());
+        } finally {
+            controller.setCancellationCheck(null);
+        }
+        assertEquals(0, database.countRows("USERS"));
+        assertEquals(0, database.countRows("TRAFFIC"));
+    }
+
+    /**
+     * The same seeded job stored twice, like a repeated transaction,
+     * keeps one row per user and minute or day.
+     */
+    @Test
+    public void repeatedJobKeepsRows() throws Exception {
+        for (StorageMode storageMode : StorageMode.values()) {
+            String table = (storageMode == StorageMode.DAILY_BLOB)
+                    ? "TRAFFIC_DAILY" : "TRAFFIC";
+
+            database.dropTables();
+            database.runJob(database.getJobParameters(storageMode,
+                    "01.01.2015 00:00", "02.01.2015 06:00"));
+
+            long users = database.countRows("USERS");
+            long rows = database.countRows(table);
+
+            database.runJob(database.getJobParameters(storageMode,
+                    "01.01.2015 00:00", "02.01.2015 06:00"));
+            assertEquals(storageMode + " users", users,
+                    database.countRows("USERS"));
+            assertEquals(storageMode + " rows", rows,
+                    database.countRows(table));
+        }
+    }
+
+    /**
+     * Extension of the partially stored day goes to the same
+     * TRAFFIC_DAILY row.
+     */
+    @Test
+    public void mergesExtendedDayIntoStoredRow() throws Exception {
+        database.runJob(database.getJobParameters(StorageMode.DAILY_BLOB,
+                "01.01.2015 00:00", "01.01.2015 12:00"));
+
+        Map<String, String[]> extension = database.getJobParameters(
+                StorageMode.DAILY_BLOB, null, "02.01.2015 00:00");
+
+        extension.put("jobType", new String[] {JobType.EXTEND_USERS.name()});
+        database.runJob(extension);
+        assertEquals(TestDatabase.USERS_QUANTITY,
+                database.countRows("TRAFFIC_DAILY"));
+
+        try (Connection connection = database.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT FIRST_MINUTE, "
+                     + "LAST_MINUTE, ENCODED_LOADS FROM TRAFFIC_DAILY;")) {
+            while (rs.next()) {
+                assertEquals(1440, TrafficCodec.decode(rs.getTimestamp(1),
+                        rs.getBytes(3)).size());
+                assertEquals(1439 * 60000L, rs.getTimestamp(2).getTime()
+                        - rs.getTimestamp(1).getTime());
+            }
+        }
+    }
+
+    /**
+     * Extension of the same stored users by the same seed stores the
+     * same traffic, other seed stores other traffic.
+     */
+    @Test
+    public void seededExtensionIsReproducible() throws Exception {
+        List<String> first = extendStoredUsers(TestDatabase.SEED);
+        List<String> repeated = extendStoredUsers(TestDatabase.SEED);
+        List<String> other = extendStoredUsers(TestDatabase.SEED + "1");
+
+        assertEquals(TestDatabase.USERS_QUANTITY * 1440, first.size());
+        assertEquals(first, repeated);
+        assertNotEquals(first, other);
+    }
+
+    /**
+     * Extension in storage mode which has no stored traffic, like on
+     * empty schema, is refused by clear error, not by missing table.
+     */
+    @Test
+    public void refusesExtensionWithoutStoredTraffic() throws Exception {
+        database.runJob(database.getJobParameters(StorageMode.PER_MINUTE,
+                "01.01.2015 00:00", "01.01.2015 12:00"));
+
+        Map<String, String[]> extension = database.getJobParameters(
+                StorageMode.DAILY_BLOB, null, "02.01.2015 00:00");
+
+        extension.put("jobType", new String[] {JobType.EXTEND_USERS.name()});
+        try {
+            database.runJob(extension);
+            fail("extension without stored traffic is not refused");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("DAILY_BLOB"));
+        }
+        assertEquals(0, database.countRows("TRAFFIC_DAILY"));
+    }
+
+    /**
+     * USERS and TRAFFIC tables of the first program version have no
+     * unique keys.
+     */
+    @Test
+    public void addsUniqueKeyToLegacyTable() throws Exception {
+        database.createLegacyTables();
+        database.runJob(database.getJobParameters(StorageMode.PER_MINUTE,
+                "01.01.2015 00:00", "01.01.2015 01:00"));
+        assertTrue(hasUniqueKey("TRAFFIC", "USER_ID", "MINUTE"));
+        assertTrue(hasUniqueKey("USERS", "FIRSTNAME", "LASTNAME", "CITY",
+                "ADDRESS"));
+    }
+
+    /**
+     * Unique key can't be added to legacy table with duplicated
+     * minutes, so job is refused instead of adding more duplicates.
+     */
+    @Test
+    public void refusesLegacyTableWithDuplicates() throws Exception {
+        database.createLegacyTables();
+        database.execute("INSERT INTO USERS(FIRSTNAME, LASTNAME, CITY, "
+                + "ADDRESS, CREATED_TIME) VALUES('A', 'B', 'C', 'D', "
+                + "'2015-01-01 00:00:00');");
+        for (int i = 0; i < 2; i++) {
+            database.execute("INSERT INTO TRAFFIC(MINUTE, LOADED_BYTES, "
+                    + "USER_ID) VALUES('2015-01-01 00:00:00', 1, 1);");
+        }
+
+        try {
+            database.runJob(database.getJobParameters(StorageMode.PER_MINUTE,
+                    "01.01.2015 00:00", "01.01.2015 01:00"));
+            fail("legacy TRAFFIC table with duplicates is not refused");
+        } catch (SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("unique key"));
+        }
+        assertEquals(2, database.countRows("TRAFFIC"));
+    }
+
+    /**
+     * Stores half a day of seeded users on empty schema and extends
+     * them to the whole day by given seed.
+     *
+     * @return TRAFFIC rows in user and minute order
+     */
+    private List<String> extendStoredUsers(String seed) throws Exception {
+        database.dropTables();
+        database.runJob(database.getJobParameters(StorageMode.PER_MINUTE,
+                "01.01.2015 00:00", "01.01.2015 12:00"));
+
+        Map<String, String[]> extension = database.getJobParameters(
+                StorageMode.PER_MINUTE, null, "02.01.2015 00:00");
+
+        extension.put("jobType", new String[] {JobType.EXTEND_USERS.name()});
+        extension.put("seed", new String[] {seed});
+        database.runJob(extension);
+        return database.readRows(TRAFFIC_ROWS_QUERY);
+    }
+
+    /**
+     * Stores seeded users till 23:10, one more user of other seed till
+     * 00:20 and extends all of them to 03:00 of the next day on empty
+     * schema, all jobs by given generation order.
+     *
+     * @return rows of all queries
+     */
+    private List<String> storeWithExtension(StorageMode storageMode,
+            GenerationOrder generationOrder, String... queries)
+            throws Exception {
+        Map<String, String[]> firstUsers = database.getJobParameters(
+                storageMode, "01.01.2015 22:30", "01.01.2015 23:10");
+        Map<String, String[]> lateUser = database.getJobParameters(
+                storageMode, "01.01.2015 23:40", "02.01.2015 00:20");
+        Map<String, String[]> extension = database.getJobParameters(
+                storageMode, null, "02.01.2015 03:00");
+
+        lateUser.put("usersQuantity", new String[] {"1"});
+        lateUser.put("seed", new String[] {TestDatabase.SEED + "1"});
+        extension.put("jobType", new String[] {JobType.EXTEND_USERS.name()});
+        database.dropTables();
+        for (Map<String, String[]> parameters
+                : Arrays.asList(firstUsers, lateUser, extension)) {
+            parameters.put("generationOrder",
+                    new String[] {generationOrder.name()});
+            database.runJob(parameters);
+        }
+
+        List<String> rows = new ArrayList<>();
+
+        for (String query : queries) {
+            rows.addAll(database.readRows(query));
+        }
+        return rows;
+    }
+
+    private SortedMap<Date, Integer> readTrafficRows(int userId, Date from,
+            Date to) throws SQLException {
+        SortedMap<Date, Integer> traffic = new TreeMap<>();
+
+        try (Connection connection = database.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT MINUTE, "
+                     + "LOADED_BYTES FROM TRAFFIC WHERE USER_ID = " + userId
+                     + ";")) {
+            while (rs.next()) {
+                Date minute = new Date(rs.getTimestamp(1).getTime());
+
+                if (!minute.before(from) && minute.before(to)) {
+                    traffic.put(minute, rs.getInt(2));
+                }
+            }
+        }
+        return traffic;
+    }
+
+    private boolean hasUniqueKey(String table, String... columns)
+            throws SQLException {
+        Map<String, Set<String>> uniqueIndexes = new HashMap<>();
+
+        try (Connection connection = database.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+
+            try (ResultSet rs = metaData.getIndexInfo(connection.getCatalog(),
+                    null, table, true, false)) {
+                while (rs.next()) {
+                    String indexName = rs.getString("INDEX_NAME");
+                    String columnName = rs.getString("COLUMN_NAME");
+
+                    if (indexName != null && columnName != null) {
+                        if (!uniqueIndexes.containsKey(indexName)) {
+                            uniqueIndexes.put(indexName, new HashSet<>());
+                        }
+                        uniqueIndexes.get(indexName).add(columnName);
+                    }
+                }
+            }
+        }
+
+        Set<String> expected = new HashSet<>();
+
+        for (String column : columns) {
+            expected.add(column);
+        }
+        return uniqueIndexes.containsValue(expected);
+    }
+}
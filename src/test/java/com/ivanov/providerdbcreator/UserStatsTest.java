@@ -0,0 +1,207 @@
+package com.ivanov.providerdbcreator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * USER_STATS profiles stored with generated traffic keep describing
+ * the whole stored traffic of every user after repeated, moved and
+ * extending jobs in both storage modes and generation orders.
+ *
+ * @author Aleksandr Ivanov
+ */
+public class UserStatsTest {
+    private static final String STATS_QUERY = "SELECT USER_ID, TOTAL_BYTES, "
+            + "MINUTES FROM USER_STATS ORDER BY USER_ID;";
+    private static final double[] QUANTILES = {0.50, 0.95, 0.99};
+    private final TestDatabase database = new TestDatabase("userstats");
+    private final SimpleDateFormat viewDateFormat =
+            new SimpleDateFormat("dd.MM.yyyy HH:mm");
+
+    @Before
+    public void dropTables() throws SQLException {
+        database.dropTables();
+    }
+
+    /**
+     * Totals, peak and quantiles of every profile match SQL over stored
+     * TRAFFIC rows, quantiles within sketch relative error.
+     */
+    @Test
+    public void matchesStatisticsOfStoredTraffic() throws Exception {
+        runJob(StorageMode.PER_MINUTE, GenerationOrder.WINDOW_MAJOR,
+                "01.01.2015 00:00", "03.01.2015 00:00");
+        assertEquals(database.readRows("SELECT USER_ID, SUM(LOADED_BYTES), "
+                + "COUNT(*), SUM(CASE WHEN LOADED_BYTES > 0 THEN 1 ELSE 0 "
+                + "END), MAX(LOADED_BYTES) FROM TRAFFIC GROUP BY USER_ID "
+                + "ORDER BY USER_ID;"),
+                database.readRows("SELECT USER_ID, TOTAL_BYTES, MINUTES, "
+                + "ACTIVE_MINUTES, PEAK_BYTES FROM USER_STATS "
+                + "ORDER BY USER_ID;"));
+
+        List<String> profiles = database.readRows("SELECT USER_ID, "
+                + "P50_BYTES, P95_BYTES, P99_BYTES FROM USER_STATS;");
+
+        assertEquals(TestDatabase.USERS_QUANTITY, profiles.size());
+        for (String profile : profiles) {
+            String[] columns = profile.split("\\|");
+            List<String> loads = database.readRows("SELECT LOADED_BYTES "
+                    + "FROM TRAFFIC WHERE USER_ID = " + columns[0]
+                    + " ORDER BY LOADED_BYTES;");
+
+            for (int i = 0; i < QUANTILES.length; i++) {
+                long exact = Long.parseLong(loads.get((int) Math.ceil(
+                        QUANTILES[i] * loads.size()) - 1));
+                long approximate = Long.parseLong(columns[i + 1]);
+
+                assertTrue(QUANTILES[i] + " quantile " + exact
+                        + " is stored as " + approximate,
+                        Math.abs(approximate - exact) <= exact * 0.016);
+            }
+        }
+    }
+
+    /**
+     * The same seed over the next range adds traffic of the same
+     * users, their profiles are continued.
+     */
+    @Test
+    public void continuesProfileOfJobOverNewRange() throws Exception {
+        for (StorageMode storageMode : StorageMode.values()) {
+            for (GenerationOrder generationOrder : GenerationOrder.values()) {
+                database.dropTables();
+                runJob(storageMode, generationOrder,
+                        "01.01.2015 00:00", "01.01.2015 06:00");
+                runJob(storageMode, generationOrder,
+                        "02.01.2015 00:00", "02.01.2015 06:00");
+                assertStatsMatchTraffic(storageMode);
+            }
+        }
+    }
+
+    /**
+     * The same job stored again regenerates the same traffic, its
+     * profiles are replaced instead of doubled.
+     */
+    @Test
+    public void replacesProfileOfRepeatedJob() throws Exception {
+        for (StorageMode storageMode : StorageMode.values()) {
+            for (GenerationOrder generationOrder : GenerationOrder.values()) {
+                database.dropTables();
+                for (int i = 0; i < 2; i++) {
+                    runJob(storageMode, generationOrder,
+                            "01.01.2015 22:00", "02.01.2015 04:00");
+                }
+                assertStatsMatchTraffic(storageMode);
+            }
+        }
+    }
+
+    /**
+     * Job which regenerates part of stored traffic can't split stored
+     * profile, so users are left without profile.
+     */
+    @Test
+    public void dropsProfileOfOverlappingJob() throws Exception {
+        for (StorageMode storageMode : StorageMode.values()) {
+            database.dropTables();
+            runJob(storageMode, GenerationOrder.USER_MAJOR,
+                    "01.01.2015 00:00", "01.01.2015 06:00");
+            runJob(storageMode, GenerationOrder.USER_MAJOR,
+                    "01.01.2015 03:00", "01.01.2015 09:00");
+            assertEquals(storageMode + " profiles", 0,
+                    database.countRows("USER_STATS"));
+        }
+    }
+
+    @Test
+    public void continuesProfileOfExtendedUsers() throws Exception {
+        for (StorageMode storageMode : StorageMode.values()) {
+            database.dropTables();
+            runJob(storageMode, GenerationOrder.USER_MAJOR,
+                    "01.01.2015 00:00", "01.01.2015 12:00");
+
+            Map<String, String[]> extension = database.getJobParameters(
+                    storageMode, null, "02.01.2015 00:00");
+
+            extension.put("jobType",
+                    new String[] {JobType.EXTEND_USERS.name()});
+            database.runJob(extension);
+            assertStatsMatchTraffic(storageMode);
+        }
+    }
+
+    /**
+     * Users stored before USER_STATS table existed get no profile of
+     * their new minutes only.
+     */
+    @Test
+    public void keepsUsersWithoutProfileWithoutIt() throws Exception {
+        for (StorageMode storageMode : StorageMode.values()) {
+            database.dropTables();
+            runJob(storageMode, GenerationOrder.USER_MAJOR,
+                    "01.01.2015 00:00", "01.01.2015 12:00");
+            database.execute("DROP TABLE USER_STATS;");
+
+            Map<String, String[]> extension = database.getJobParameters(
+                    storageMode, null, "02.01.2015 00:00");
+
+            extension.put("jobType",
+                    new String[] {JobType.EXTEND_USERS.name()});
+            database.runJob(extension);
+            runJob(storageMode, GenerationOrder.WINDOW_MAJOR,
+                    "02.01.2015 00:00", "02.01.2015 06:00");
+            assertEquals(storageMode + " profiles", 0,
+                    database.countRows("USER_STATS"));
+        }
+    }
+
+    private void runJob(StorageMode storageMode,
+            GenerationOrder generationOrder, String startDate, String endDate)
+            throws Exception {
+        Map<String, String[]> parameters =
+                database.getJobParameters(storageMode, startDate, endDate);
+
+        parameters.put("generationOrder",
+                new String[] {generationOrder.name()});
+        database.runJob(parameters);
+    }
+
+    /**
+     * Every user has profile with total bytes and minutes of his
+     * traffic read back from storage.
+     */
+    private void assertStatsMatchTraffic(StorageMode storageMode)
+            throws Exception {
+        UserDao userDao = database.getUserDao(storageMode);
+        Date from = viewDateFormat.parse("01.01.2000 00:00");
+        Date to = viewDateFormat.parse("01.01.2100 00:00");
+        List<String> expected = new ArrayList<>();
+
+        for (String userId : database.readRows(
+                "SELECT USER_ID FROM USERS ORDER BY USER_ID;")) {
+            long totalBytes = 0;
+            long minutes = 0;
+
+            for (int load : userDao.readUserTraffic(Integer.parseInt(userId),
+                    from, to).values()) {
+                totalBytes += load;
+                minutes++;
+            }
+            expected.add(userId + "|" + totalBytes + "|" + minutes);
+        }
+        assertEquals(TestDatabase.USERS_QUANTITY, expected.size());
+        assertEquals(storageMode + " profiles", expected,
+                database.readRows(STATS_QUERY));
+    }
+}
@@ -0,0 +1,53 @@
+package com.ivanov.providerdbcreator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Seeded users are reproducible.
+ *
+ * @author Aleksandr Ivanov
+ */
+public class UserTest {
+    private static final int THREADS = 8;
+    private static final int USERS_QUANTITY = 2_000;
+
+    /**
+     * Users generated by parallel threads, like workers of one
+     * process, get the same information as users generated one by one.
+     */
+    @Test
+    public void parallelSeededUsersAreReproducible() throws Exception {
+        List<User> expected = createUsers();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        try {
+            List<Future<List<User>>> results = new ArrayList<>();
+
+            for (int i = 0; i < THREADS; i++) {
+                results.add(executor.submit(this::createUsers));
+            }
+            for (Future<List<User>> result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<User> createUsers() {
+        List<User> users = new ArrayList<>();
+
+        for (int i = 0; i < USERS_QUANTITY; i++) {
+            users.add(new User(20150101L + i));
+        }
+        return users;
+    }
+}